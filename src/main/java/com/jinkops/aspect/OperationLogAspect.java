@@ -2,9 +2,8 @@ package com.jinkops.aspect;
 
 import com.jinkops.annotation.OperationLog;
 import com.jinkops.audit.AuditContext;
+import com.jinkops.audit.OperationLogWriter;
 import com.jinkops.entity.log.OperationLogEntity;
-import com.jinkops.mq.producer.EventLogService;
-import com.jinkops.repository.OperationLogRepository;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,7 +12,6 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.MDC;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
@@ -23,7 +21,6 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import java.lang.reflect.Method;
 import java.time.LocalDateTime;
 import java.util.Arrays;
-import java.util.concurrent.Executor;
 
 /**
  * 操作日誌切面。
@@ -38,10 +35,7 @@ import java.util.concurrent.Executor;
 @RequiredArgsConstructor
 public class OperationLogAspect {
 
-    private final OperationLogRepository repository;
-    private final EventLogService eventLogService;
-    @Qualifier("mqTaskExecutor")
-    private final Executor mqTaskExecutor;
+    private final OperationLogWriter operationLogWriter;
 
     // 攔截所有有 @OperationLog 的方法，成功或失敗都會盡量落一筆操作日誌。
     @Around("@annotation(com.jinkops.annotation.OperationLog)")
@@ -94,7 +88,8 @@ public class OperationLogAspect {
         }
     }
 
-    // 真正組裝並保存操作日誌；成功和異常都走這裡，欄位比較不會漏。
+    // 組裝操作日誌交給寫入器；成功和異常都走這裡，欄位比較不會漏。
+    // 寫 DB 和發 MQ 都在寫入器的背景執行緒做，請求這邊不等 MySQL。
     private void saveLog(String username,
                          String desc,
                          String className,
@@ -128,12 +123,7 @@ public class OperationLogAspect {
         entity.setUri(uri);
         entity.setHttpMethod(httpMethod);
         entity.setIp(ip);
-        repository.save(entity);
-        try {
-            mqTaskExecutor.execute(() -> eventLogService.sendOperationLog(entity));
-        } catch (Exception e) {
-            log.warn("[AUDIT] operation log saved, but MQ publish task submit failed: {}", e.getMessage());
-        }
+        operationLogWriter.submit(entity);
     }
 
     private String appendAuditSummary(String desc, String auditSummary) {
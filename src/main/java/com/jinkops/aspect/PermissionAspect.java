@@ -2,26 +2,27 @@ package com.jinkops.aspect;
 
 import com.jinkops.annotation.RequirePermission;
 import com.jinkops.audit.AuditContext;
-import com.jinkops.cache.service.PermissionCache;
 import com.jinkops.enums.PermissionMode;
 import com.jinkops.exception.BizException;
 import com.jinkops.exception.ErrorCode;
+import com.jinkops.service.PermissionRegistry;
+import com.jinkops.service.PermissionResolver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 // 只攔 RequirePermission，讓 RBAC 控制落在這裡
 @Aspect
@@ -30,16 +31,15 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class PermissionAspect {
 
-    private final PermissionCache permissionCache;
+    // 同一個請求裡解析好的權限會掛在 request attribute 上，後面的檢查直接用
+    private final PermissionResolver permissionResolver;
+
+    // 每個 @RequirePermission 方法編好的權限遮罩；編號表換版本才重編
+    private final Map<Method, PermissionRegistry.Requirement> requirements = new ConcurrentHashMap<>();
 
     // 攔截所有帶 @RequirePermission 的方法
     @Before("@annotation(requirePermission)")
     public void checkPermission(JoinPoint joinPoint, RequirePermission requirePermission) {
-        // 從註解拿權限碼，統一轉大寫避免大小寫不一致
-        String[] requiredPermissions = requirePermission.value();
-        for (int i = 0; i < requiredPermissions.length; i++) {
-            requiredPermissions[i] = requiredPermissions[i].toUpperCase();
-        }
         PermissionMode mode = requirePermission.mode();
         // 從 Security 拿到當前用戶
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
@@ -49,54 +49,44 @@ public class PermissionAspect {
             throw new BizException(ErrorCode.UNAUTHORIZED);
         }
 
-        String username = auth.getName();
-
-        // 先走 Redis 權限快取
-        Set<String> userPerm = permissionCache.get(username);
-        boolean permissionCacheHit = userPerm != null && !userPerm.isEmpty();
-        AuditContext.put("permissionRedis", permissionCacheHit ? "HIT" : "MISS");
         AuditContext.put("permissionMode", mode);
-
-        if (!permissionCacheHit) {
-            userPerm = auth.getAuthorities()
-                    .stream()
-                    .map(GrantedAuthority::getAuthority)
-                    .collect(Collectors.toSet());
+        PermissionResolver.Resolved resolved = permissionResolver.resolve(auth.getName());
+        if (resolved == null) {
+            // token 還沒過期但用戶已經被刪了
+            throw new BizException(ErrorCode.UNAUTHORIZED);
         }
 
-        Set<String> normalizedPerm = userPerm.stream()
-                .filter(p -> p != null && !p.isBlank())
-                .map(String::toUpperCase)
-                .collect(Collectors.toCollection(HashSet::new));
-
         // 超級管理員直接放行
-        if (normalizedPerm.contains("ROLE_ADMIN")) {
+        if (resolved.admin()) {
             return;
         }
 
-        // 判斷權限（AND / OR）
-        boolean allowed;
-
-        if (mode == PermissionMode.AND) {
-            // AND：全部權限都要有
-            allowed = normalizedPerm.containsAll(Set.of(requiredPermissions));
-        } else {
-            // OR：有一個就行
-            allowed = false;
-            for (String p : requiredPermissions) {
-                if (normalizedPerm.contains(p)) {
-                    allowed = true;
-                    break;
-                }
-            }
-        }
+        // 判斷權限（AND / OR），都是對 bitset 做幾次位元運算
+        PermissionRegistry.Requirement requirement = requirement(joinPoint, requirePermission, resolved.snapshot());
+        long[] granted = resolved.bits().words();
+        boolean allowed = mode == PermissionMode.AND
+                ? requirement.allOf(granted)
+                : requirement.anyOf(granted);
 
         // 如果不滿足權限：拋例外
         if (!allowed) {
             ServletRequestAttributes attrs = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
             String uri = attrs != null && attrs.getRequest() != null ? attrs.getRequest().getRequestURI() : "unknown";
-            log.warn("Permission denied uri={} required={} granted={}", uri, Arrays.toString(requiredPermissions), normalizedPerm);
+            log.warn("Permission denied uri={} required={} granted={}", uri,
+                    Arrays.toString(requirePermission.value()), resolved.snapshot().decode(resolved.bits()));
             throw new BizException(ErrorCode.FORBIDDEN);
         }
     }
+
+    private PermissionRegistry.Requirement requirement(JoinPoint joinPoint,
+                                                       RequirePermission requirePermission,
+                                                       PermissionRegistry.Snapshot snapshot) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        PermissionRegistry.Requirement requirement = requirements.get(method);
+        if (requirement == null || requirement.snapshot() != snapshot) {
+            requirement = snapshot.compile(requirePermission.value());
+            requirements.put(method, requirement);
+        }
+        return requirement;
+    }
 }
@@ -0,0 +1,319 @@
+package com.jinkops.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jinkops.entity.log.OperationLogEntity;
+import com.jinkops.enums.LogOverflowPolicy;
+import com.jinkops.mq.producer.EventLogService;
+import com.jinkops.repository.OperationLogRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 操作日誌非同步寫入器。
+ *
+ * 切面只負責把日誌丟進有界緩衝區，真正寫 DB 的是背景執行緒：
+ * 湊滿 batch-size 或等到 flush-interval 就一次 saveAll，請求執行緒不用再等 MySQL。
+ * 緩衝區滿了照 overflow-policy 處理（等待 / 丟棄 / 落盤），落盤的資料之後會被補回 DB。
+ * 應用關閉時會把緩衝區剩下的日誌全部寫完才退出。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OperationLogWriter implements SmartLifecycle {
+
+    private static final long REPLAY_BACKOFF_MS = 30_000;
+
+    private final OperationLogRepository repository;
+    private final EventLogService eventLogService;
+    private final ObjectMapper objectMapper;
+    @Qualifier("mqTaskExecutor")
+    private final Executor mqTaskExecutor;
+
+    @Value("${app.audit.log-writer.capacity:10000}")
+    private int capacity;
+
+    @Value("${app.audit.log-writer.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.audit.log-writer.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${app.audit.log-writer.overflow-policy:SPILL}")
+    private LogOverflowPolicy overflowPolicy;
+
+    @Value("${app.audit.log-writer.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    @Value("${app.audit.log-writer.spill-file:logs/operation-log-spill.jsonl}")
+    private String spillFile;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final Object spillLock = new Object();
+    // 入隊拿讀鎖、關閉拿寫鎖：關閉後不會再有人把日誌塞進已經清空的緩衝區
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    // DB 寫失敗後隔一段時間再重放落盤資料，避免 DB 掛著時來回搬檔案
+    private volatile long nextReplayAt;
+
+    private BlockingQueue<OperationLogEntity> queue;
+    private Thread drainer;
+    private volatile boolean running;
+
+    // 給切面用：只入隊，不碰 DB
+    public void submit(OperationLogEntity entity) {
+        if (entity == null) {
+            return;
+        }
+        stateLock.readLock().lock();
+        try {
+            if (running) {
+                enqueue(entity);
+                return;
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        // 還沒啟動或已經在關閉，直接同步寫，避免日誌掉在半路
+        flush(List.of(entity));
+    }
+
+    private void enqueue(OperationLogEntity entity) {
+        if (queue.offer(entity)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    if (queue.offer(entity, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // 等不到位子也不能讓請求一直卡著，退回落盤
+                spill(List.of(entity));
+            }
+            case DROP -> {
+                long count = dropped.incrementAndGet();
+                log.warn("[AUDIT] log buffer full, dropped traceId={} droppedTotal={}", entity.getTraceId(), count);
+            }
+            case SPILL -> spill(List.of(entity));
+        }
+    }
+
+    // 目前緩衝區裡還沒寫 DB 的筆數
+    public int pending() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public long spilledCount() {
+        return spilled.get();
+    }
+
+    @Override
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        running = true;
+        drainer = new Thread(this::drainLoop, "oplog-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+        log.info("[AUDIT] operation log writer started capacity={} batchSize={} flushIntervalMs={} overflow={}",
+                capacity, batchSize, flushIntervalMs, overflowPolicy);
+    }
+
+    @Override
+    public void stop() {
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        if (drainer == null) {
+            return;
+        }
+        // 不打斷寫入執行緒，免得正在跑的 JDBC 批次被中斷；它最多等一個 flush-interval 就會自己收尾
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 寫入執行緒退出後，緩衝區如果還有殘留就同步補寫一次
+        List<OperationLogEntity> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+        log.info("[AUDIT] operation log writer stopped flushedOnShutdown={} dropped={} spilled={}",
+                rest.size(), dropped.get(), spilled.get());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // phase 越小越晚停；要比 web server 的優雅關閉（DEFAULT_PHASE - 2048）更晚，關閉前最後幾個請求的日誌才進得來
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void drainLoop() {
+        replaySpill();
+        List<OperationLogEntity> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                // 關閉訊號：把手上的和緩衝區裡的全部寫完再走
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            } else if (running) {
+                // 閒下來的時候才去補落盤的資料，不跟即時日誌搶
+                replaySpill();
+            }
+        }
+    }
+
+    // 收一批：湊滿 batchSize 或時間到就返回
+    private void collect(List<OperationLogEntity> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            OperationLogEntity first = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void flush(List<OperationLogEntity> batch) {
+        List<OperationLogEntity> saved;
+        try {
+            // saveAll 自帶交易，一批一個 transaction
+            saved = repository.saveAll(batch);
+        } catch (Exception e) {
+            log.error("[AUDIT] batch save failed size={} spill=true reason={}", batch.size(), e.getMessage(), e);
+            nextReplayAt = System.currentTimeMillis() + REPLAY_BACKOFF_MS;
+            spill(batch);
+            return;
+        }
+
+        // 有 id 之後才發 MQ，ES 那邊用 id 當文件 id
+        List<OperationLogEntity> toPublish = List.copyOf(saved);
+        try {
+            mqTaskExecutor.execute(() -> toPublish.forEach(eventLogService::sendOperationLog));
+        } catch (Exception e) {
+            log.warn("[AUDIT] operation logs saved, but MQ publish task submit failed size={}: {}",
+                    toPublish.size(), e.getMessage());
+        }
+        log.debug("[AUDIT] batch saved size={}", saved.size());
+    }
+
+    // 一行一筆 JSON 追加到本機檔案
+    private void spill(List<OperationLogEntity> entities) {
+        synchronized (spillLock) {
+            Path path = Paths.get(spillFile);
+            try {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (OperationLogEntity entity : entities) {
+                        // 寫失敗再重放時讓 DB 重新給 id
+                        entity.setId(null);
+                        writer.write(objectMapper.writeValueAsString(entity));
+                        writer.newLine();
+                    }
+                }
+                long total = spilled.addAndGet(entities.size());
+                log.warn("[AUDIT] spilled operation logs to disk count={} spilledTotal={}", entities.size(), total);
+            } catch (IOException e) {
+                dropped.addAndGet(entities.size());
+                log.error("[AUDIT] spill to disk failed, dropped count={} reason={}", entities.size(), e.getMessage(), e);
+            }
+        }
+    }
+
+    // 把落盤的日誌讀回來分批寫 DB；先改名再讀，避免跟正在追加的檔案打架
+    private void replaySpill() {
+        if (System.currentTimeMillis() < nextReplayAt) {
+            return;
+        }
+        Path path = Paths.get(spillFile);
+        Path replaying = Paths.get(spillFile + ".replaying");
+        try {
+            synchronized (spillLock) {
+                if (!Files.exists(replaying)) {
+                    if (!Files.exists(path) || Files.size(path) == 0) {
+                        return;
+                    }
+                    Files.move(path, replaying, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            int replayed = 0;
+            List<OperationLogEntity> batch = new ArrayList<>(batchSize);
+            try (BufferedReader reader = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    batch.add(objectMapper.readValue(line, OperationLogEntity.class));
+                    if (batch.size() >= batchSize) {
+                        flush(batch);
+                        replayed += batch.size();
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                replayed += batch.size();
+            }
+            Files.deleteIfExists(replaying);
+            log.info("[AUDIT] replayed spilled operation logs count={}", replayed);
+        } catch (Exception e) {
+            log.error("[AUDIT] replay spilled operation logs failed reason={}", e.getMessage(), e);
+        }
+    }
+}
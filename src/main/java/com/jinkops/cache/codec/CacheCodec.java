@@ -0,0 +1,18 @@
+package com.jinkops.cache.codec;
+
+/**
+ * 快取值的編碼方式。
+ *
+ * 每種實作有一個固定的 id，會寫進值的開頭，讀的時候照 id 找回對應的 codec；
+ * 所以切換 app.cache.codec 不用清快取，舊格式的值照樣讀得出來。id 一旦用過就不能改。
+ */
+public interface CacheCodec {
+
+    byte id();
+
+    String name();
+
+    byte[] encode(Object value) throws Exception;
+
+    <T> T decode(byte[] bytes, int offset, int length, Class<T> type) throws Exception;
+}
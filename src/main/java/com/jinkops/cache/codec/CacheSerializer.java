@@ -0,0 +1,136 @@
+package com.jinkops.cache.codec;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 快取值的序列化入口：挑 codec 編碼，夠大的再用 LZ4 壓縮，最前面加兩個位元組說明格式。
+ *
+ * 格式：0x00 | flags（低 6 位是 codec id，最高位代表有壓縮）| [壓縮前長度 4 bytes] | 資料
+ * JSON 文字不可能以 0x00 開頭，所以沒有這個前綴的就是舊的 JSON 字串，照 JSON 讀。
+ */
+@Slf4j
+@Component
+public class CacheSerializer {
+
+    private static final byte MAGIC = 0x00;
+    private static final int HEADER_LENGTH = 2;
+    private static final int LENGTH_FIELD = 4;
+    private static final int FLAG_LZ4 = 0x80;
+    private static final int CODEC_MASK = 0x3F;
+
+    private final Map<Byte, CacheCodec> codecs = new HashMap<>();
+    private final CacheCodec jsonCodec;
+    private final MeterRegistry meterRegistry;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    // 寫入用哪個 codec：json / smile；讀的時候看前綴，不受這個設定影響
+    @Value("${app.cache.codec:json}")
+    private String codecName;
+
+    // 編碼後超過幾個位元組才壓縮，<= 0 代表不壓縮
+    @Value("${app.cache.compression.threshold-bytes:0}")
+    private int compressThreshold;
+
+    private CacheCodec writeCodec;
+
+    public CacheSerializer(List<CacheCodec> codecList, JsonCacheCodec jsonCodec, MeterRegistry meterRegistry) {
+        for (CacheCodec codec : codecList) {
+            CacheCodec previous = codecs.put(codec.id(), codec);
+            if (previous != null) {
+                throw new IllegalStateException("duplicate cache codec id " + codec.id()
+                        + ": " + previous.name() + ", " + codec.name());
+            }
+        }
+        this.jsonCodec = jsonCodec;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        writeCodec = codecs.values().stream()
+                .filter(codec -> codec.name().equalsIgnoreCase(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("unknown app.cache.codec: " + codecName));
+        log.info("[CACHE] serializer codec={} compressThreshold={}", writeCodec.name(), compressThreshold);
+    }
+
+    public byte[] serialize(Object value) throws Exception {
+        byte[] raw = writeCodec.encode(value);
+        boolean compress = compressThreshold > 0 && raw.length >= compressThreshold;
+        byte[] out;
+        if (compress) {
+            int maxLength = compressor.maxCompressedLength(raw.length);
+            byte[] buffer = new byte[HEADER_LENGTH + LENGTH_FIELD + maxLength];
+            int written = compressor.compress(raw, 0, raw.length, buffer, HEADER_LENGTH + LENGTH_FIELD, maxLength);
+            if (written < raw.length) {
+                buffer[0] = MAGIC;
+                buffer[1] = (byte) (writeCodec.id() | FLAG_LZ4);
+                ByteBuffer.wrap(buffer, HEADER_LENGTH, LENGTH_FIELD).putInt(raw.length);
+                out = Arrays.copyOf(buffer, HEADER_LENGTH + LENGTH_FIELD + written);
+            } else {
+                // 壓不下來（例如已經很緊湊的資料）就存原樣
+                compress = false;
+                out = frame(raw);
+            }
+        } else {
+            out = frame(raw);
+        }
+        sizeSummary(writeCodec.name(), compress).record(out.length);
+        return out;
+    }
+
+    public <T> T deserialize(byte[] bytes, Class<T> type) throws Exception {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            // 舊資料：沒有前綴的 JSON 字串
+            return jsonCodec.decode(bytes, 0, bytes.length, type);
+        }
+        int flags = bytes[1] & 0xFF;
+        CacheCodec codec = codecs.get((byte) (flags & CODEC_MASK));
+        if (codec == null) {
+            throw new IllegalStateException("unknown cache codec id " + (flags & CODEC_MASK));
+        }
+        if ((flags & FLAG_LZ4) == 0) {
+            return codec.decode(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, type);
+        }
+        int rawLength = ByteBuffer.wrap(bytes, HEADER_LENGTH, LENGTH_FIELD).getInt();
+        byte[] raw = new byte[rawLength];
+        decompressor.decompress(bytes, HEADER_LENGTH + LENGTH_FIELD, raw, 0, rawLength);
+        return codec.decode(raw, 0, rawLength, type);
+    }
+
+    private byte[] frame(byte[] raw) {
+        byte[] out = new byte[HEADER_LENGTH + raw.length];
+        out[0] = MAGIC;
+        out[1] = writeCodec.id();
+        System.arraycopy(raw, 0, out, HEADER_LENGTH, raw.length);
+        return out;
+    }
+
+    // 寫進 Redis 的值有多大，換 codec / 開壓縮前後可以直接比
+    private DistributionSummary sizeSummary(String codec, boolean compressed) {
+        return DistributionSummary.builder("jinkops.cache.value.bytes")
+                .baseUnit("bytes")
+                .tag("codec", codec)
+                .tag("compressed", String.valueOf(compressed))
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,37 @@
+package com.jinkops.cache.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+// 原本的 JSON 文字格式，跟 Spring 用同一個 ObjectMapper
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final byte ID = 1;
+
+    private final ObjectMapper objectMapper;
+
+    public JsonCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) throws Exception {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) throws Exception {
+        return objectMapper.readValue(bytes, offset, length, type);
+    }
+}
@@ -0,0 +1,17 @@
+package com.jinkops.cache.key;
+
+import java.util.Set;
+
+/**
+ * 一個快取 key 的描述：實際的 Redis key，以及它掛在哪些標籤下。
+ * 由各個 *Keys 類別產生，呼叫端不自己拼字串，寫入和失效用的就一定是同一套規則。
+ *
+ * @param key  Redis 裡的 key
+ * @param tags 失效時依哪些標籤一起清掉
+ */
+public record CacheKey(String key, Set<String> tags) {
+
+    public static CacheKey of(String key, String... tags) {
+        return new CacheKey(key, Set.of(tags));
+    }
+}
@@ -0,0 +1,15 @@
+package com.jinkops.cache.key;
+
+
+public class CacheTags {
+
+    // 所有跟用戶列表有關的快取（分頁內容帶著角色與權限，角色 / 權限變更也要清）
+    public static final String USERS = "users";
+
+    // 標籤在 Redis 裡對應的 set，裡面放掛在這個標籤下的快取 key
+    private static final String TAG_PREFIX = "jinkops:tag:";
+
+    public static String tagKey(String tag) {
+        return TAG_PREFIX + tag;
+    }
+}
@@ -0,0 +1,12 @@
+package com.jinkops.cache.key;
+
+
+public class LogKeys {
+
+    // ES 已經索引到哪個時間點（epoch 毫秒）
+    private static final String ES_INDEX_WATERMARK = "jinkops:oplog:es:watermark";
+
+    public static String esIndexWatermark() {
+        return ES_INDEX_WATERMARK;
+    }
+}
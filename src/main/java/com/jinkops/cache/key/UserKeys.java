@@ -3,14 +3,20 @@ package com.jinkops.cache.key;
 
 public class UserKeys {
 
+    // 兩級快取裡用戶資訊這一組的名稱（指標、失效廣播都用它）
+    public static final String USER_INFO_CACHE = "userInfo";
+
     // 用戶資訊快取 key
     private static final String USER_INFO_PREFIX = "jinkops:user:info:";
 
     public static String userInfo(String username) {
         return USER_INFO_PREFIX + username;
     }
-    // 分頁
-    public static String userListPage(int page, int size) {
-        return "user:list:page"+page+"-"+size;
+    // 用戶分頁快取 key 前綴
+    private static final String USER_LIST_PAGE_PREFIX = "jinkops:user:list:page:";
+
+    // 分頁，例 jinkops:user:list:page:1-10；掛在 users 標籤下，用戶 / 角色 / 權限有寫入就整批清
+    public static CacheKey userListPage(int page, int size) {
+        return CacheKey.of(USER_LIST_PAGE_PREFIX + page + "-" + size, CacheTags.USERS);
     }
 }
@@ -0,0 +1,139 @@
+package com.jinkops.cache.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 快取值 + 提前刷新需要的資訊。
+ *
+ * Redis 裡存成 "xf:重建毫秒:過期時間戳|資料"，一次 GET 就能拿齊；
+ * 沒有這個前綴的（舊資料、空值快取 "null"）照原樣當資料讀，只是不會提前刷新。
+ * 前綴一律是 ASCII，後面的資料可以是文字也可以是 CacheSerializer 編出來的二進位。
+ */
+public class CacheEntry {
+
+    private static final String HEADER = "xf:";
+    private static final byte[] HEADER_BYTES = HEADER.getBytes(StandardCharsets.US_ASCII);
+    // 前綴最長也就 "xf:" + 兩個 long + 分隔符，超過就不是前綴
+    private static final int MAX_HEADER_LENGTH = 48;
+
+    private final byte[] payload;
+    // 上次重建花了多久（毫秒）
+    private final long computeMillis;
+    // 什麼時候過期（epoch 毫秒），0 代表不知道
+    private final long expireAt;
+
+    public CacheEntry(byte[] payload, long computeMillis, long expireAt) {
+        this.payload = payload;
+        this.computeMillis = computeMillis;
+        this.expireAt = expireAt;
+    }
+
+    public static String wrap(String value, long computeMillis, long expireAt) {
+        return header(computeMillis, expireAt) + value;
+    }
+
+    public static byte[] wrap(byte[] payload, long computeMillis, long expireAt) {
+        byte[] header = header(computeMillis, expireAt).getBytes(StandardCharsets.US_ASCII);
+        byte[] raw = new byte[header.length + payload.length];
+        System.arraycopy(header, 0, raw, 0, header.length);
+        System.arraycopy(payload, 0, raw, header.length, payload.length);
+        return raw;
+    }
+
+    public static CacheEntry unwrap(String raw) {
+        return raw == null ? null : unwrap(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CacheEntry unwrap(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (!startsWithHeader(raw)) {
+            return new CacheEntry(raw, 0, 0);
+        }
+        int colon = indexOf(raw, (byte) ':', HEADER_BYTES.length);
+        int bar = indexOf(raw, (byte) '|', HEADER_BYTES.length);
+        if (colon < 0 || bar < colon) {
+            return new CacheEntry(raw, 0, 0);
+        }
+        try {
+            long compute = Long.parseLong(ascii(raw, HEADER_BYTES.length, colon));
+            long expire = Long.parseLong(ascii(raw, colon + 1, bar));
+            byte[] payload = new byte[raw.length - bar - 1];
+            System.arraycopy(raw, bar + 1, payload, 0, payload.length);
+            return new CacheEntry(payload, compute, expire);
+        } catch (NumberFormatException e) {
+            return new CacheEntry(raw, 0, 0);
+        }
+    }
+
+    public boolean shouldRefreshEarly(double beta, long minWindowMillis) {
+        return shouldRefreshEarly(computeMillis, expireAt, beta, minWindowMillis);
+    }
+
+    /**
+     * XFetch：越接近過期、重建越貴，越有機會提前刷新。
+     * now - window * beta * ln(rand) >= expireAt 時觸發（ln(rand) 是負的，等於往後推一段隨機時間）。
+     * window 取 max(computeMillis, minWindowMillis)：單筆查詢只要幾毫秒，不墊底的話提前量小到幾乎碰不到。
+     */
+    public static boolean shouldRefreshEarly(long computeMillis, long expireAt, double beta, long minWindowMillis) {
+        if (expireAt <= 0 || computeMillis <= 0) {
+            return false;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random <= 0) {
+            return true;
+        }
+        double gap = Math.max(computeMillis, minWindowMillis) * beta * -Math.log(random);
+        return System.currentTimeMillis() + gap >= expireAt;
+    }
+
+    // 文字格式的資料（舊的 JSON 字串）
+    public String getValue() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    // 原始位元組，交給 CacheSerializer 解
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getComputeMillis() {
+        return computeMillis;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    private static String header(long computeMillis, long expireAt) {
+        return HEADER + Math.max(computeMillis, 0) + ":" + expireAt + "|";
+    }
+
+    private static boolean startsWithHeader(byte[] raw) {
+        if (raw.length < HEADER_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER_BYTES.length; i++) {
+            if (raw[i] != HEADER_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] raw, byte target, int from) {
+        int end = Math.min(raw.length, MAX_HEADER_LENGTH);
+        for (int i = from; i < end; i++) {
+            if (raw[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String ascii(byte[] raw, int from, int to) {
+        return new String(raw, from, to - from, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,75 @@
+package com.jinkops.cache.service;
+
+import com.jinkops.audit.AuditContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 快取提前刷新（stale-while-revalidate）。
+ *
+ * 讀到快要過期的值時照樣回給呼叫端，另外丟一個背景任務把它重建好，
+ * 這樣就不會剛好有個倒楣的請求撞上過期、自己去等 DB。
+ * 同一個 key 同時只會有一個刷新任務；執行緒池滿了就放棄這次刷新，真的過期時走一般回源。
+ */
+@Slf4j
+@Service
+public class CacheRefresher {
+
+    private final Executor cacheRefreshExecutor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    // XFetch 的 beta，越大越早刷新
+    @Value("${app.cache.xfetch.beta:1.0}")
+    private double beta;
+
+    // 提前刷新窗口的下限，重建成本比這個小的值也至少提前這麼久開始有機會刷新
+    @Value("${app.cache.xfetch.min-window-ms:5000}")
+    private long minWindowMillis;
+
+    public CacheRefresher(@Qualifier("cacheRefreshExecutor") Executor cacheRefreshExecutor) {
+        this.cacheRefreshExecutor = cacheRefreshExecutor;
+    }
+
+    // 看這筆值該不該提前刷新，該的話丟背景任務；回傳有沒有觸發
+    public boolean refreshIfNeeded(String key, CacheEntry entry, Runnable reload) {
+        return entry != null && refreshIfNeeded(key, entry.getComputeMillis(), entry.getExpireAt(), reload);
+    }
+
+    // 同上，L1 命中時用：手上只有回填時記下的重建成本與 L2 過期時間
+    public boolean refreshIfNeeded(String key, long computeMillis, long expireAt, Runnable reload) {
+        if (!CacheEntry.shouldRefreshEarly(computeMillis, expireAt, beta, minWindowMillis)) {
+            return false;
+        }
+        if (!refreshing.add(key)) {
+            // 已經有人在刷
+            return false;
+        }
+        try {
+            cacheRefreshExecutor.execute(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    reload.run();
+                    log.debug("[CACHE] early refresh done key={} cost={}ms", key, System.currentTimeMillis() - start);
+                } catch (Exception e) {
+                    log.warn("[CACHE] early refresh failed key={} reason={}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                    // 背景執行緒不屬於任何請求，順手清掉
+                    AuditContext.clear();
+                }
+            });
+        } catch (Exception e) {
+            // 排不進去（池滿）就算了，反正呼叫端手上有值
+            refreshing.remove(key);
+            return false;
+        }
+        AuditContext.put("cacheRefresh", "EARLY");
+        return true;
+    }
+}
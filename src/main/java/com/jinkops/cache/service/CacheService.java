@@ -1,17 +1,77 @@
 package com.jinkops.cache.service;
 
+import com.jinkops.cache.codec.CacheSerializer;
+import com.jinkops.cache.key.CacheKey;
+import com.jinkops.cache.key.CacheTags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
+@Slf4j
 @Service
 public class CacheService {
+
+    private static final long TAG_TTL_MARGIN_SECONDS = 600;
+    // 批次操作一次最多送幾個 key，太大的單一指令 / pipeline 會卡住 Redis 和連線
+    private static final int BATCH_CHUNK = 500;
+
+    // SMEMBERS + UNLINK + DEL 在一個腳本裡原子執行，不會有成員在中間登記進來、標籤被刪後變成沒人管的快取
+    private static final DefaultRedisScript<Long> INVALIDATE_TAG_SCRIPT = new DefaultRedisScript<>(
+            "local members = redis.call('SMEMBERS', KEYS[1]) "
+                    + "for i = 1, #members, 500 do "
+                    + "redis.call('UNLINK', unpack(members, i, math.min(i + 499, #members))) end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "return #members",
+            Long.class
+    );
+
+    // KEYS[1] 是快取 key，其餘是標籤 set；標籤 set 比成員活久一點，沒人寫入時自己消失
+    private static final DefaultRedisScript<Long> SET_WITH_TAGS_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2]) "
+                    + "for i = 2, #KEYS do "
+                    + "redis.call('SADD', KEYS[i], KEYS[1]) "
+                    + "redis.call('EXPIRE', KEYS[i], ARGV[3]) end "
+                    + "return #KEYS - 1",
+            Long.class
+    );
+
     private final StringRedisTemplate redis;
+    // 物件快取走位元組，值由 CacheSerializer 編碼
+    private final RedisTemplate<String, byte[]> bytesRedis;
+    private final CacheSerializer serializer;
+    private final CacheSweeper cacheSweeper;
 
-    public CacheService(StringRedisTemplate redis) {
+    // 命名空間換版本後要不要在背景清掉上一代（不清也會照 TTL 過期）
+    @Value("${app.cache.sweep-old-generations:false}")
+    private boolean sweepOldGenerations;
+
+    public CacheService(StringRedisTemplate redis,
+                        @Qualifier("cacheBytesRedisTemplate") RedisTemplate<String, byte[]> bytesRedis,
+                        CacheSerializer serializer,
+                        CacheSweeper cacheSweeper) {
         this.redis = redis;
+        this.bytesRedis = bytesRedis;
+        this.serializer = serializer;
+        this.cacheSweeper = cacheSweeper;
     }
 
     // 寫入快取
@@ -19,9 +79,56 @@ public class CacheService {
         redis.opsForValue().set(key, value, ttlSeconds, TimeUnit.SECONDS);
     }
 
-    // 讀取快取
+    // 物件編碼後寫入；computeMillis > 0 會順便記下重建成本與過期時間，給提前刷新（XFetch）判斷用
+    public void setObject(String key, Object value, long ttlSeconds, long computeMillis) throws Exception {
+        setPayload(key, serializer.serialize(value), ttlSeconds, computeMillis);
+    }
+
+    // 寫入已經編碼好的值（呼叫端自己要用編碼結果時，省得編兩次）；回傳記下的過期時間，沒記就是 0
+    public long setPayload(String key, byte[] payload, long ttlSeconds, long computeMillis) {
+        long expireAt = expireAt(ttlSeconds, computeMillis);
+        bytesRedis.opsForValue().set(key, wrap(payload, computeMillis, expireAt), ttlSeconds, TimeUnit.SECONDS);
+        return expireAt;
+    }
+
+    // 寫入快取並登記到它的標籤下，之後可以依標籤一起失效
+    public void setObject(CacheKey cacheKey, Object value, long ttlSeconds, long computeMillis) throws Exception {
+        byte[] raw = withHeader(serializer.serialize(value), ttlSeconds, computeMillis);
+        List<String> keys = new ArrayList<>();
+        keys.add(cacheKey.key());
+        cacheKey.tags().forEach(tag -> keys.add(CacheTags.tagKey(tag)));
+        // 寫值和登記標籤放在同一個腳本，中間插不進失效，不會留下沒登記的快取
+        bytesRedis.execute(SET_WITH_TAGS_SCRIPT, keys, raw, ascii(ttlSeconds), ascii(ttlSeconds + TAG_TTL_MARGIN_SECONDS));
+    }
+
+    // 讀取快取（只回資料本身）
     public String get(String key) {
-        return redis.opsForValue().get(key);
+        CacheEntry entry = CacheEntry.unwrap(redis.opsForValue().get(key));
+        return entry == null ? null : entry.getValue();
+    }
+
+    // 讀取物件快取連同重建成本與過期時間；舊格式的值沒有這些資訊
+    public CacheEntry getEntry(String key) {
+        return CacheEntry.unwrap(bytesRedis.opsForValue().get(key));
+    }
+
+    // 解出 getEntry 拿到的值；新舊格式（JSON 字串 / 帶前綴的二進位）都認得
+    public <T> T decode(CacheEntry entry, Class<T> type) throws Exception {
+        return serializer.deserialize(entry.getPayload(), type);
+    }
+
+    // 讀物件快取；沒有或解不開都回 null，解不開當沒命中，讓呼叫端回源重建
+    public <T> T getObject(String key, Class<T> type) {
+        CacheEntry entry = getEntry(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return decode(entry, type);
+        } catch (Exception e) {
+            log.warn("[CACHE] decode failed key={} reason={}", key, e.getMessage());
+            return null;
+        }
     }
 
     // 刪除快取
@@ -29,6 +136,111 @@ public class CacheService {
         redis.delete(key);
     }
 
+    // 一次讀多個 key（MGET，每 500 個一個指令），回傳順序跟 keys 一樣，沒有的位置是 null
+    public List<CacheEntry> mgetEntries(List<String> keys) {
+        List<CacheEntry> entries = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += BATCH_CHUNK) {
+            List<String> chunk = keys.subList(from, Math.min(from + BATCH_CHUNK, keys.size()));
+            List<byte[]> values = bytesRedis.opsForValue().multiGet(chunk);
+            for (int i = 0; i < chunk.size(); i++) {
+                byte[] raw = values == null ? null : values.get(i);
+                entries.add(CacheEntry.unwrap(raw));
+            }
+        }
+        return entries;
+    }
+
+    // 一次讀多個物件快取；只回命中的 key，解不開的當沒命中
+    public <T> Map<String, T> mgetObjects(Collection<String> keys, Class<T> type) {
+        List<String> keyList = List.copyOf(new LinkedHashSet<>(keys));
+        List<CacheEntry> entries = mgetEntries(keyList);
+        Map<String, T> result = new HashMap<>();
+        for (int i = 0; i < keyList.size(); i++) {
+            CacheEntry entry = entries.get(i);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                T value = decode(entry, type);
+                if (value != null) {
+                    result.put(keyList.get(i), value);
+                }
+            } catch (Exception e) {
+                log.warn("[CACHE] decode failed key={} reason={}", keyList.get(i), e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    // 一次寫多個物件快取，每個 key 可以有自己的 TTL；用 pipeline 送 SET EX，整批只等一次來回
+    public void msetObjects(Map<String, ?> values, ToLongFunction<String> ttlSeconds) throws Exception {
+        Map<String, byte[]> payloads = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            payloads.put(entry.getKey(), serializer.serialize(entry.getValue()));
+        }
+        msetPayloads(payloads, ttlSeconds);
+    }
+
+    // 同上，值已經編碼好
+    public void msetPayloads(Map<String, byte[]> payloads, ToLongFunction<String> ttlSeconds) {
+        List<Map.Entry<String, byte[]>> entries = new ArrayList<>(payloads.entrySet());
+        for (int from = 0; from < entries.size(); from += BATCH_CHUNK) {
+            List<Map.Entry<String, byte[]>> chunk = entries.subList(from, Math.min(from + BATCH_CHUNK, entries.size()));
+            bytesRedis.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, byte[]> entry : chunk) {
+                    connection.stringCommands().set(
+                            entry.getKey().getBytes(StandardCharsets.UTF_8),
+                            entry.getValue(),
+                            Expiration.seconds(ttlSeconds.applyAsLong(entry.getKey())),
+                            RedisStringCommands.SetOption.upsert());
+                }
+                return null;
+            });
+        }
+    }
+
+    // 一次刪多個 key，用 UNLINK 讓 Redis 在背景回收記憶體
+    public long mdelete(Collection<String> keys) {
+        List<String> keyList = List.copyOf(keys);
+        long removed = 0;
+        for (int from = 0; from < keyList.size(); from += BATCH_CHUNK) {
+            Long count = redis.unlink(keyList.subList(from, Math.min(from + BATCH_CHUNK, keyList.size())));
+            removed += count == null ? 0 : count;
+        }
+        return removed;
+    }
+
+    /**
+     * 批次版 Cache Aside：先 MGET 一次，沒命中的 key 交給 bulkLoader 一次查完（例如一個 IN 查詢），
+     * 查到的再用 pipeline 一次回填。bulkLoader 沒回的 key 代表不存在，不寫快取。
+     */
+    public <T> Map<String, T> getOrLoad(Collection<String> keys,
+                                        Class<T> type,
+                                        ToLongFunction<String> ttlSeconds,
+                                        Function<Collection<String>, Map<String, T>> bulkLoader) {
+        Map<String, T> result = mgetObjects(keys, type);
+        List<String> missing = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (!result.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        Map<String, T> loaded = bulkLoader.apply(missing);
+        if (loaded != null && !loaded.isEmpty()) {
+            result.putAll(loaded);
+            try {
+                msetObjects(loaded, ttlSeconds);
+            } catch (Exception e) {
+                // 回填失敗不影響這次結果，下次再查
+                log.warn("[CACHE] bulk refill failed size={} reason={}", loaded.size(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
     // 判斷是否存在
     public boolean exists(String key) {
         return Boolean.TRUE.equals(redis.hasKey(key));
@@ -40,11 +252,64 @@ public class CacheService {
         return expire == null ? -2 : expire; // 防止返回 null
     }
 
-    // 刪除分頁快取
-    public void deleteByPrefix(String prefix) {
-        Set<String> keys = redis.keys(prefix + "*");
-        if (keys != null && !keys.isEmpty()) {
-            redis.delete(keys);
+    // 命名空間目前的版本號，還沒有就是 0
+    public long namespaceVersion(String namespace) {
+        String value = redis.opsForValue().get(namespaceKey(namespace));
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // 依標籤失效：把登記在標籤下的 key 全部 UNLINK，再刪掉標籤本身，成本只跟成員數有關
+    public long invalidateTag(String tag) {
+        Long removed = redis.execute(INVALIDATE_TAG_SCRIPT, List.of(CacheTags.tagKey(tag)));
+        return removed == null ? 0 : removed;
+    }
+
+    // 帶版本號的 key：<namespace>:v<版本>:<rest>
+    public String versionedKey(String namespace, String rest) {
+        return namespace + ":v" + namespaceVersion(namespace) + ":" + rest;
+    }
+
+    // 整個命名空間失效：版本號 +1，舊版本的 key 沒人會再讀到，等 TTL 自己過期
+    public long bumpNamespace(String namespace) {
+        Long version = redis.opsForValue().increment(namespaceKey(namespace));
+        long current = version == null ? 0 : version;
+        if (sweepOldGenerations && current > 0) {
+            // 想早點把記憶體還回來，就在背景把上一代掃掉
+            cacheSweeper.sweepAsync(namespace + ":v" + (current - 1) + ":*");
         }
+        return current;
+    }
+
+    // 刪除某個前綴下的所有 key；改成 SCAN + UNLINK 背景清，不再用會卡住 Redis 的 KEYS
+    public void deleteByPrefix(String prefix) {
+        cacheSweeper.sweepAsync(prefix + "*");
+    }
+
+    private byte[] withHeader(byte[] payload, long ttlSeconds, long computeMillis) {
+        return wrap(payload, computeMillis, expireAt(ttlSeconds, computeMillis));
+    }
+
+    private static byte[] wrap(byte[] payload, long computeMillis, long expireAt) {
+        return expireAt <= 0 ? payload : CacheEntry.wrap(payload, computeMillis, expireAt);
+    }
+
+    // 沒有重建成本的值不提前刷新，也就不用記過期時間
+    private static long expireAt(long ttlSeconds, long computeMillis) {
+        return computeMillis <= 0 ? 0 : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    private byte[] ascii(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private String namespaceKey(String namespace) {
+        return "jinkops:ns:" + namespace + ":ver";
     }
 }
@@ -0,0 +1,74 @@
+package com.jinkops.cache.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 背景清掃快取 key。
+ *
+ * 用 SCAN 分批找、UNLINK 分批刪（刪除在 Redis 背景執行緒做），不會像 KEYS 那樣整個卡住 Redis。
+ * 一般失效靠命名空間版本號就夠了，這裡只給真的想提早把舊資料清掉的場景用。
+ */
+@Slf4j
+@Service
+public class CacheSweeper {
+
+    private static final int SCAN_COUNT = 500;
+
+    private final StringRedisTemplate redis;
+    private final Executor cacheSweepExecutor;
+
+    public CacheSweeper(StringRedisTemplate redis,
+                        @Qualifier("cacheSweepExecutor") Executor cacheSweepExecutor) {
+        this.redis = redis;
+        this.cacheSweepExecutor = cacheSweepExecutor;
+    }
+
+    // 丟到背景清，呼叫端不用等
+    public void sweepAsync(String pattern) {
+        try {
+            cacheSweepExecutor.execute(() -> sweep(pattern));
+        } catch (Exception e) {
+            // 排不進去就算了，舊資料還是會照 TTL 過期
+            log.warn("[CACHE] sweep task rejected pattern={} reason={}", pattern, e.getMessage());
+        }
+    }
+
+    // 同步清，回傳刪了幾個
+    public long sweep(String pattern) {
+        long start = System.currentTimeMillis();
+        long removed = 0;
+        List<String> batch = new ArrayList<>(SCAN_COUNT);
+        try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= SCAN_COUNT) {
+                    removed += unlink(batch);
+                    batch.clear();
+                }
+            }
+            removed += unlink(batch);
+            log.info("[CACHE] sweep done pattern={} removed={} cost={}ms",
+                    pattern, removed, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("[CACHE] sweep failed pattern={} removed={} reason={}", pattern, removed, e.getMessage());
+        }
+        return removed;
+    }
+
+    private long unlink(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long count = redis.unlink(keys);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,285 @@
+package com.jinkops.cache.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jinkops.cache.codec.CacheSerializer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * 兩級快取：本機 Caffeine（L1）擋在 Redis（L2）前面。
+ *
+ * L1 存的是已經反序列化好的物件，命中時不用走網路也不用再解碼。
+ * 任何一台 evict 都會透過 Redis pub/sub 廣播，其他台收到後清掉自己的 L1；
+ * pub/sub 不保證送達，所以 L1 另外有一個很短的 TTL 當保底。
+ * 每個快取名稱各自有 L1 命中 / 未命中 / 淘汰，以及 L2 命中 / 未命中的指標。
+ */
+@Slf4j
+@Service
+public class NearCache implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "jinkops:cache:invalidate";
+    // 廣播「整個快取清空」時用的 key
+    private static final String ALL_KEYS = "*";
+
+    private final CacheService cacheService;
+    private final StringRedisTemplate redis;
+    private final CacheSerializer serializer;
+    private final MeterRegistry meterRegistry;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final CacheRefresher cacheRefresher;
+
+    private final Map<String, Cache<String, Local>> caches = new ConcurrentHashMap<>();
+
+    @Value("${app.cache.local.max-size:10000}")
+    private long localMaxSize;
+
+    @Value("${app.cache.local.ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    public NearCache(CacheService cacheService,
+                     StringRedisTemplate redis,
+                     CacheSerializer serializer,
+                     MeterRegistry meterRegistry,
+                     RedisMessageListenerContainer listenerContainer,
+                     CacheRefresher cacheRefresher) {
+        this.cacheService = cacheService;
+        this.redis = redis;
+        this.serializer = serializer;
+        this.meterRegistry = meterRegistry;
+        this.listenerContainer = listenerContainer;
+        this.cacheRefresher = cacheRefresher;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * 先查 L1，再查 L2。L2 命中會順便回填 L1。
+     * 回傳的 Lookup 分得出「沒快取」和「快取了不存在（空值快取）」兩種情況。
+     */
+    public <T> Lookup<T> get(String cacheName, String key, Class<T> type) {
+        return get(cacheName, key, type, null);
+    }
+
+    // 同上；L2 的值快過期時照樣回傳，另外在背景用 reload 提前重建。
+    // 熱 key 幾乎都由 L1 回應，所以 L1 命中也要拿回填時記下的 L2 過期時間判斷一次，不然永遠輪不到提前刷新
+    public <T> Lookup<T> get(String cacheName, String key, Class<T> type, Runnable reload) {
+        Cache<String, Local> local = local(cacheName);
+        Local cached = local.getIfPresent(key);
+        if (cached != null) {
+            if (reload != null) {
+                cacheRefresher.refreshIfNeeded(key, cached.computeMillis(), cached.expireAt(), reload);
+            }
+            return new Lookup<>(Lookup.L1, type.cast(cached.value()));
+        }
+
+        CacheEntry entry = cacheService.getEntry(key);
+        if (entry == null) {
+            l2Counter(cacheName, "miss").increment();
+            return Lookup.miss();
+        }
+        l2Counter(cacheName, "hit").increment();
+        if (reload != null) {
+            cacheRefresher.refreshIfNeeded(key, entry, reload);
+        }
+        try {
+            T value = cacheService.decode(entry, type);
+            // 空值快取解出來就是 null
+            local.put(key, new Local(value, entry.getComputeMillis(), entry.getExpireAt()));
+            return new Lookup<>(Lookup.L2, value);
+        } catch (Exception e) {
+            // 壞掉的快取當作沒命中，讓呼叫端回 DB 重建
+            log.warn("[CACHE] decode failed cache={} key={} reason={}", cacheName, key, e.getMessage());
+            return Lookup.miss();
+        }
+    }
+
+    /**
+     * 批次版 get：先看 L1，剩下的用一次 MGET 查 L2。
+     * 只回命中的 key（含空值快取）；沒在結果裡的 key 就是兩級都沒有，要呼叫端自己回源。
+     */
+    public <T> Map<String, Lookup<T>> getAll(String cacheName, Collection<String> keys, Class<T> type) {
+        Cache<String, Local> local = local(cacheName);
+        Map<String, Lookup<T>> result = new HashMap<>();
+        List<String> remote = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            Local cached = local.getIfPresent(key);
+            if (cached != null) {
+                result.put(key, new Lookup<>(Lookup.L1, type.cast(cached.value())));
+            } else {
+                remote.add(key);
+            }
+        }
+        if (remote.isEmpty()) {
+            return result;
+        }
+
+        List<CacheEntry> entries = cacheService.mgetEntries(remote);
+        int hits = 0;
+        for (int i = 0; i < remote.size(); i++) {
+            String key = remote.get(i);
+            CacheEntry entry = entries.get(i);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                T value = cacheService.decode(entry, type);
+                local.put(key, new Local(value, entry.getComputeMillis(), entry.getExpireAt()));
+                result.put(key, new Lookup<>(Lookup.L2, value));
+                hits++;
+            } catch (Exception e) {
+                log.warn("[CACHE] decode failed cache={} key={} reason={}", cacheName, key, e.getMessage());
+            }
+        }
+        l2Counter(cacheName, "hit").increment(hits);
+        l2Counter(cacheName, "miss").increment(remote.size() - hits);
+        return result;
+    }
+
+    // 批次版 put：一次 pipeline 寫 L2 再放 L1；value 為 null 的寫空值快取
+    public void putAll(String cacheName, Map<String, ?> values, ToLongFunction<String> ttlSeconds) {
+        Cache<String, Local> local = local(cacheName);
+        try {
+            Map<String, byte[]> payloads = new HashMap<>();
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                payloads.put(entry.getKey(), serializer.serialize(entry.getValue()));
+            }
+            cacheService.msetPayloads(payloads, ttlSeconds);
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                local.put(entry.getKey(), new Local(value == null
+                        ? null
+                        : serializer.deserialize(payloads.get(entry.getKey()), value.getClass()), 0, 0));
+            }
+        } catch (Exception e) {
+            log.warn("[CACHE] put all failed cache={} size={} reason={}", cacheName, values.size(), e.getMessage());
+        }
+    }
+
+    // 寫 L2 再放 L1；value 為 null 就寫空值快取（編碼後的 null）
+    public void put(String cacheName, String key, Object value, long ttlSeconds) {
+        put(cacheName, key, value, ttlSeconds, 0);
+    }
+
+    // 同上，另外記下這次重建花了多久，越貴的值越早提前刷新
+    public void put(String cacheName, String key, Object value, long ttlSeconds, long computeMillis) {
+        try {
+            byte[] payload = serializer.serialize(value);
+            long cost = value == null ? 0 : computeMillis;
+            long expireAt = cacheService.setPayload(key, payload, ttlSeconds, cost);
+            // L1 放一份從編碼結果還原的副本，不跟呼叫端（可能是 JPA 實體）共用同一個物件
+            local(cacheName).put(key, new Local(value == null ? null : serializer.deserialize(payload, value.getClass()),
+                    cost, expireAt));
+        } catch (Exception e) {
+            log.warn("[CACHE] put failed cache={} key={} reason={}", cacheName, key, e.getMessage());
+        }
+    }
+
+    // 刪 L2、清本機 L1，再通知其他台清 L1
+    public void evict(String cacheName, String key) {
+        cacheService.delete(key);
+        local(cacheName).invalidate(key);
+        publish(cacheName, key);
+    }
+
+    // 只清 L1（本機 + 其他台），L2 由呼叫端自己處理
+    public void evictLocalAll(String cacheName) {
+        local(cacheName).invalidateAll();
+        publish(cacheName, ALL_KEYS);
+    }
+
+    // 收到其他台（也包含自己）的廣播
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.indexOf('|');
+        if (split <= 0) {
+            return;
+        }
+        String cacheName = body.substring(0, split);
+        String key = body.substring(split + 1);
+        Cache<String, Local> local = caches.get(cacheName);
+        if (local == null) {
+            return;
+        }
+        if (ALL_KEYS.equals(key)) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+        log.debug("[CACHE] local invalidated cache={} key={}", cacheName, key);
+    }
+
+    private void publish(String cacheName, String key) {
+        try {
+            redis.convertAndSend(INVALIDATION_CHANNEL, cacheName + "|" + key);
+        } catch (Exception e) {
+            // 發不出去就靠 L1 的短 TTL 收斂
+            log.warn("[CACHE] publish invalidation failed cache={} key={} reason={}", cacheName, key, e.getMessage());
+        }
+    }
+
+    private Cache<String, Local> local(String cacheName) {
+        return caches.computeIfAbsent(cacheName, name -> {
+            Cache<String, Local> cache = Caffeine.newBuilder()
+                    .maximumSize(localMaxSize)
+                    .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                    .recordStats()
+                    .build();
+            // cache.gets / cache.evictions / cache.size，tag cache=near.<name>
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "near." + name);
+            return cache;
+        });
+    }
+
+    private Counter l2Counter(String cacheName, String result) {
+        return meterRegistry.counter("jinkops.cache.l2.gets", "cache", cacheName, "result", result);
+    }
+
+    /**
+     * L1 裡的一筆：解好的值（null 代表空值快取），連同 L2 記下的重建成本與過期時間（0 代表沒記，不提前刷新）
+     */
+    private record Local(Object value, long computeMillis, long expireAt) {
+    }
+
+    /**
+     * 一次查詢的結果。source 是 L1 / L2 代表命中（value 可能是 null，代表空值快取），null 代表沒命中。
+     */
+    public record Lookup<T>(String source, T value) {
+
+        public static final String L1 = "L1";
+        public static final String L2 = "L2";
+
+        public static <T> Lookup<T> miss() {
+            return new Lookup<>(null, null);
+        }
+
+        public boolean hit() {
+            return source != null;
+        }
+    }
+}
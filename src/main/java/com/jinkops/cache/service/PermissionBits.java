@@ -0,0 +1,13 @@
+package com.jinkops.cache.service;
+
+/**
+ * 一個用戶的有效權限，存成 bitset 放進 Redis。
+ *
+ * 第幾個 bit 代表哪個權限碼由 PermissionRegistry 決定；fingerprint 是那份編號表的指紋，
+ * 讀到指紋對不上的（別台用不同的編號表寫的）就當沒命中重算，不會拿錯 bit 去判斷。
+ *
+ * @param fingerprint 編號表指紋
+ * @param words       bitset，第 i 個權限在 words[i / 64] 的第 i % 64 位
+ */
+public record PermissionBits(long fingerprint, long[] words) {
+}
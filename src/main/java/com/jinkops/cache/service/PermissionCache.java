@@ -1,73 +1,147 @@
 package com.jinkops.cache.service;
 
-import org.springframework.data.redis.core.RedisTemplate;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * 用戶權限快取，值是 PermissionBits（bitset + 編號表指紋）。
+ *
+ * key 帶權限命名空間版本號，呼叫端先拿 version()，同一個版本拿去查編號表、讀寫快取，
+ * 一次請求只讀一次版本號。指紋對不上的值當作沒命中。
+ */
+@Slf4j
 @Service
 public class PermissionCache {
 
-    private final RedisTemplate<String, Object> redis;
-    private static final String PREFIX = "perm:";
+    private static final long TTL_SECONDS = TimeUnit.HOURS.toSeconds(24);
 
-    public PermissionCache(RedisTemplate<String, Object> redis) {
-        this.redis = redis;
+    private final SingleFlight singleFlight;
+    private final CacheService cacheService;
+    // 權限快取的命名空間，角色 / 權限變更時整批換版本
+    private static final String NAMESPACE = "perm";
+
+    public PermissionCache(SingleFlight singleFlight, CacheService cacheService) {
+        this.singleFlight = singleFlight;
+        this.cacheService = cacheService;
+    }
+
+    // 目前的權限版本；快取 key 和權限編號表都跟著它
+    public long version() {
+        return cacheService.namespaceVersion(NAMESPACE);
     }
 
-    // Redis 的 key，例 perm:admin、perm:root
-    private String key(String username) {
-        return PREFIX + username; // 正確的 key：perm:root
+    // Redis 的 key，例 perm:v3:admin、perm:v3:root
+    private String key(long version, String username) {
+        return NAMESPACE + ":v" + version + ":" + username;
     }
 
-    // 權限集合快取到 Redis，快取時長 24 小時
-    // 例：set("root", ["sys:user:list", "sys:user:update"])
-    public void set(String username, Set<String> perms) {
-        redis.opsForValue().set(key(username), perms, 24, TimeUnit.HOURS);
+    // 權限 bitset 快取到 Redis，快取時長 24 小時
+    public void set(long version, String username, PermissionBits bits) {
+        try {
+            cacheService.setObject(key(version, username), bits, TTL_SECONDS, 0);
+        } catch (Exception e) {
+            // 寫不進去下次就回源，不影響這次請求
+            log.warn("[CACHE] permission set failed username={} reason={}", username, e.getMessage());
+        }
     }
 
-    // 從 Redis 中讀取權限集合
-    // 讀不到就表示快取不存在（可能過期）
-    public Set<String> get(String username) {
-        Object obj = redis.opsForValue().get(key(username));
-        if (obj == null) {
+    // 從 Redis 中讀取權限 bitset
+    // 讀不到就表示快取不存在（可能過期）；舊格式（字串陣列）或指紋不同的也當作不存在
+    public PermissionBits get(long version, String username, long fingerprint) {
+        PermissionBits bits = cacheService.getObject(key(version, username), PermissionBits.class);
+        if (bits == null || bits.words() == null || bits.fingerprint() != fingerprint) {
             return null;
         }
-        if (obj instanceof Set<?> set) {
-            Set<String> result = new HashSet<>();
-            for (Object v : set) {
-                if (v != null) {
-                    result.add(String.valueOf(v));
-                }
+        return bits;
+    }
+
+    // 讀不到就回源並回填；同一個用戶同時只放一個請求回源，其他人等它的結果
+    public PermissionBits getOrLoad(long version, String username, long fingerprint, Supplier<PermissionBits> loader) {
+        PermissionBits cached = get(version, username, fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+        String key = key(version, username);
+        return singleFlight.load(key, () -> {
+            // 等鎖期間可能已經被別人填好
+            PermissionBits again = get(version, username, fingerprint);
+            if (again != null) {
+                return again;
             }
-            return result;
+            PermissionBits loaded = loader.get();
+            if (loaded != null) {
+                set(version, username, loaded);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 批次查多個用戶的權限：快取一次 MGET，沒命中的交給 bulkLoader 一次查完再 pipeline 回填。
+     * bulkLoader 傳入沒命中的用戶名，回傳 用戶名 -> 權限 bitset；查不到的用戶不在結果裡。
+     */
+    public Map<String, PermissionBits> getOrLoadAll(long version,
+                                                    long fingerprint,
+                                                    Collection<String> usernames,
+                                                    Function<Collection<String>, Map<String, PermissionBits>> bulkLoader) {
+        Map<String, String> keyToUser = new LinkedHashMap<>();
+        for (String username : usernames) {
+            keyToUser.put(key(version, username), username);
         }
-        if (obj instanceof List<?> list) {
-            Set<String> result = new HashSet<>();
-            for (Object v : list) {
-                if (v != null) {
-                    result.add(String.valueOf(v));
-                }
+
+        Map<String, PermissionBits> byKey = cacheService.getOrLoad(keyToUser.keySet(), PermissionBits.class,
+                key -> TTL_SECONDS,
+                missingKeys -> {
+                    List<String> missingUsers = missingKeys.stream().map(keyToUser::get).toList();
+                    Map<String, PermissionBits> loaded = bulkLoader.apply(missingUsers);
+                    Map<String, PermissionBits> refill = new HashMap<>();
+                    if (loaded != null) {
+                        loaded.forEach((username, bits) -> refill.put(key(version, username), bits));
+                    }
+                    return refill;
+                });
+        // 指紋不同的是別的編號表算的，不能用；這些用戶再交給 bulkLoader 查一次並蓋掉快取
+        List<String> stale = keyToUser.entrySet().stream()
+                .filter(e -> byKey.get(e.getKey()) != null && byKey.get(e.getKey()).fingerprint() != fingerprint)
+                .map(Map.Entry::getValue)
+                .toList();
+        Map<String, PermissionBits> reloaded = stale.isEmpty() ? Map.of() : bulkLoader.apply(stale);
+        if (!reloaded.isEmpty()) {
+            Map<String, PermissionBits> refill = new HashMap<>();
+            reloaded.forEach((username, bits) -> refill.put(key(version, username), bits));
+            try {
+                cacheService.msetObjects(refill, key -> TTL_SECONDS);
+            } catch (Exception e) {
+                log.warn("[CACHE] permission refill failed size={} reason={}", refill.size(), e.getMessage());
             }
-            return result;
         }
-        return Collections.emptySet();
+
+        Map<String, PermissionBits> result = new LinkedHashMap<>();
+        keyToUser.forEach((key, username) -> {
+            PermissionBits bits = reloaded.containsKey(username) ? reloaded.get(username) : byKey.get(key);
+            if (bits != null && bits.fingerprint() == fingerprint) {
+                result.put(username, bits);
+            }
+        });
+        return result;
     }
 
     // 刪除某個用戶的權限快取
     public void delete(String username) {
-        redis.delete(key(username));
+        cacheService.delete(key(version(), username));
     }
 
-    // 清空全部權限快取（角色/權限變更後使用）
+    // 清空全部權限快取（角色/權限變更後使用）：只把版本號 +1，不用 KEYS 掃全庫
     public void deleteAll() {
-        Set<String> keys = redis.keys(PREFIX + "*");
-        if (keys != null && !keys.isEmpty()) {
-            redis.delete(keys);
-        }
+        cacheService.bumpNamespace(NAMESPACE);
     }
 }
@@ -0,0 +1,124 @@
+package com.jinkops.cache.service;
+
+import com.jinkops.audit.AuditContext;
+import com.jinkops.exception.BizException;
+import com.jinkops.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 快取未命中時的合併載入（single-flight）。
+ *
+ * 同一個 key 在同一台機器上同時只會有一個請求真的去回源，其他請求等它的結果。
+ * 開啟 cluster 模式時，回源前再搶一把很短的 Redisson 鎖，多台之間也只放一個進 DB；
+ * 所以 loader 要自己先重讀一次快取（別台可能剛填好），沒有才查 DB 並回填。
+ */
+@Slf4j
+@Service
+public class SingleFlight {
+
+    private final RedissonClient redissonClient;
+
+    // key -> 正在跑的那次載入
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // 跟著別人的載入最多等多久，等不到就自己查
+    @Value("${app.cache.single-flight.wait-ms:3000}")
+    private long waitMillis;
+
+    @Value("${app.cache.single-flight.cluster-enabled:false}")
+    private boolean clusterEnabled;
+
+    // 搶 cluster 鎖最多等多久、鎖自動過期時間
+    @Value("${app.cache.single-flight.cluster-lock-wait-ms:500}")
+    private long clusterLockWaitMillis;
+
+    @Value("${app.cache.single-flight.cluster-lock-lease-ms:5000}")
+    private long clusterLockLeaseMillis;
+
+    public SingleFlight(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Callable<T> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            // 已經有人在查，等它的結果就好
+            AuditContext.put("cacheLoad", "SHARED");
+            try {
+                return (T) running.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.warn("[CACHE] single flight wait timeout key={} waitMs={}, load by self", key, waitMillis);
+                return call(loader);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BizException(ErrorCode.INTERNAL_ERROR, "快取載入被中斷");
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+
+        AuditContext.put("cacheLoad", "LEADER");
+        try {
+            T value = clusterEnabled ? loadWithClusterLock(key, loader) : call(loader);
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Error（OOM、StackOverflow）也要通知等待的人，不然它們會白等 wait-ms
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private <T> T loadWithClusterLock(String key, Callable<T> loader) {
+        RLock lock = redissonClient.getLock("lock:cache:load:" + key);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(clusterLockWaitMillis, clusterLockLeaseMillis, TimeUnit.MILLISECONDS);
+            if (!locked) {
+                // 搶不到代表別台在查，等太久就不等了，自己查（loader 會先重讀快取）
+                AuditContext.put("cacheLoadLock", "TIMEOUT");
+            }
+            return call(loader);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(ErrorCode.INTERNAL_ERROR, "快取載入被中斷");
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private <T> T call(Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    private RuntimeException rethrow(Throwable e) {
+        if (e instanceof Error error) {
+            throw error;
+        }
+        if (e instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        return new BizException(ErrorCode.INTERNAL_ERROR, "快取載入失敗：" + e.getMessage());
+    }
+}
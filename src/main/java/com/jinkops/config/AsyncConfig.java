@@ -1,5 +1,6 @@
 package com.jinkops.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -10,6 +11,14 @@ import java.util.concurrent.ThreadPoolExecutor;
 @Configuration
 public class AsyncConfig {
 
+    // 同時最多幾個 BCrypt 在算；0 代表跟 CPU 核心數一樣
+    @Value("${app.security.password.threads:0}")
+    private int passwordHashThreads;
+
+    // 排隊上限，滿了直接拒絕
+    @Value("${app.security.password.queue-capacity:64}")
+    private int passwordHashQueueCapacity;
+
     @Bean("mqTaskExecutor")
     public Executor mqTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -21,4 +30,44 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    // 快取提前刷新用，池子滿了就丟掉（呼叫端手上已經有舊值）
+    @Bean("cacheRefreshExecutor")
+    public Executor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("cache-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // 背景清掃快取 key，單執行緒慢慢掃，不跟請求搶 Redis
+    @Bean("cacheSweepExecutor")
+    public Executor cacheSweepExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("cache-sweep-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // 密碼雜湊專用，BCrypt 很吃 CPU，限制同時在算的數量；排不進去由呼叫端回 SYSTEM_BUSY
+    @Bean("passwordHashExecutor")
+    public Executor passwordHashExecutor() {
+        int threads = passwordHashThreads > 0 ? passwordHashThreads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(passwordHashQueueCapacity);
+        executor.setThreadNamePrefix("password-hash-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
 }
@@ -0,0 +1,36 @@
+package com.jinkops.config;
+
+import com.jinkops.id.SnowflakeIdWorker;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetAddress;
+
+@Slf4j
+@Configuration
+public class IdGeneratorConfig {
+
+    // 沒設定就用 -1，啟動時改用主機名推一個
+    @Value("${app.id.worker-id:-1}")
+    private long workerId;
+
+    @PostConstruct
+    public void init() {
+        long id = workerId >= 0 ? workerId : workerIdFromHost();
+        SnowflakeIdWorker.configure(id);
+        log.info("[ID] snowflake id worker ready workerId={} configured={}", id, workerId >= 0);
+    }
+
+    // 單機或開發環境夠用；多節點正式環境請明確設定 APP_ID_WORKER_ID，避免撞號
+    private long workerIdFromHost() {
+        try {
+            String host = InetAddress.getLocalHost().getHostName();
+            return (host.hashCode() & Integer.MAX_VALUE) % (SnowflakeIdWorker.MAX_WORKER_ID + 1);
+        } catch (Exception e) {
+            log.warn("[ID] resolve host name failed, fallback workerId=0: {}", e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.jinkops.config;
 
 import com.jinkops.service.CustomUserDetailsService;
+import com.jinkops.web.security.BoundedPasswordEncoder;
 import com.jinkops.web.security.JwtAuthenticationFilter;
 import com.jinkops.web.security.RestAccessDeniedHandler;
 import com.jinkops.web.security.RestAuthenticationEntryPoint;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -15,11 +17,12 @@ import org.springframework.security.config.annotation.authentication.configurati
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.concurrent.Executor;
+
 @EnableMethodSecurity // 啟用 @RequirePermission
 @Configuration // 標記為組態類
 @EnableWebSecurity
@@ -35,6 +38,23 @@ public class SecurityConfig {
     @Value("${app.security.enabled:true}")
     private boolean securityEnabled;
 
+    // 固定的 BCrypt 強度；0 代表啟動時實測，挑最接近 target-ms 的強度
+    @Value("${app.security.password.strength:0}")
+    private int passwordStrength;
+
+    @Value("${app.security.password.target-ms:250}")
+    private long passwordTargetMillis;
+
+    @Value("${app.security.password.min-strength:10}")
+    private int passwordMinStrength;
+
+    @Value("${app.security.password.max-strength:14}")
+    private int passwordMaxStrength;
+
+    // 請求執行緒最多等雜湊結果多久
+    @Value("${app.security.password.wait-ms:3000}")
+    private long passwordWaitMillis;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http.csrf(csrf -> csrf.disable());
@@ -70,17 +90,23 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // 密碼雜湊器：BCrypt 丟到專用執行緒池算，強度固定或啟動時實測
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); // 密碼雜湊器
+    public PasswordEncoder passwordEncoder(@Qualifier("passwordHashExecutor") Executor passwordHashExecutor) {
+        boolean pinned = passwordStrength > 0;
+        int strength = pinned
+                ? passwordStrength
+                : BoundedPasswordEncoder.calibrate(passwordTargetMillis, passwordMinStrength, passwordMaxStrength);
+        return new BoundedPasswordEncoder(passwordHashExecutor, strength, pinned, passwordWaitMillis);
     }
 
-    // 認證供應者：指定用戶查找與密碼驗證
+    // 認證供應者：指定用戶查找與密碼驗證；雜湊強度跟目前不同時登入成功後順便重算存回去
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public DaoAuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
         provider.setUserDetailsService(customUserDetailsService); // RBAC 的 UserDetailsService
-        provider.setPasswordEncoder(passwordEncoder());
+        provider.setUserDetailsPasswordService(customUserDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
         return provider;
     }
 
@@ -1,11 +1,15 @@
 package com.jinkops.controller;
 
 import com.jinkops.annotation.OperationLog;
+import com.jinkops.dto.RefreshTokenRequest;
 import com.jinkops.entity.user.User;
+import com.jinkops.exception.BizException;
+import com.jinkops.exception.ErrorCode;
 import com.jinkops.service.AuthService;
 import com.jinkops.service.UserService;
 import com.jinkops.vo.ApiResponse;
 import com.jinkops.vo.LoginResponse;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -39,6 +43,14 @@ public class AuthController {
         return ApiResponse.success("登入成功", authService.login(user));
     }
 
+    // 換發 Token：用 refresh token 換新的一組，不用重新登入
+    @OperationLog("换发 Token")
+    @PostMapping("/refresh")
+    public ApiResponse<LoginResponse> refresh(@RequestBody RefreshTokenRequest request) {
+        log.info("[API] POST /api/auth/refresh");
+        return ApiResponse.success("換發成功", authService.refresh(request.getRefreshToken()));
+    }
+
     // 驗證 Token
     @OperationLog("校验 Token")
     @GetMapping("/verify")
@@ -46,4 +58,19 @@ public class AuthController {
         log.info("[API] GET /api/auth/verify");
         return ApiResponse.success("Token 有效", authService.verify(token));
     }
+
+    // 登出：撤銷目前這張 token
+    // token 從 request 取，不當方法參數，免得被操作日誌原封不動記進 args
+    @OperationLog("用户登出")
+    @PostMapping("/logout")
+    public ApiResponse<String> logout(HttpServletRequest httpRequest,
+                                      @RequestBody(required = false) RefreshTokenRequest request) {
+        log.info("[API] POST /api/auth/logout");
+        String authorization = httpRequest.getHeader("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            throw new BizException(ErrorCode.UNAUTHORIZED);
+        }
+        authService.logout(authorization.substring(7), request == null ? null : request.getRefreshToken());
+        return ApiResponse.success("登出成功", null);
+    }
 }
@@ -4,6 +4,7 @@ import com.jinkops.annotation.RequirePermission;
 import com.jinkops.entity.log.OperationLogEntity;
 import com.jinkops.service.OperationLogService;
 import com.jinkops.vo.ApiResponse;
+import com.jinkops.vo.CursorPage;
 import com.jinkops.vo.LogQueryRequest;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -47,4 +48,19 @@ public class OperationLogController {
         log.info("[API] GET /api/logs/search/advanced");
         return ApiResponse.success(operationLogService.searchEs(keyword, startTime, endTime, page, size));
     }
+
+    @Operation(summary = "ES 游標搜索：GET /api/logs/search/cursor")
+    @RequirePermission("sys:log:query")
+    @GetMapping("/search/cursor")
+    public ApiResponse<CursorPage<OperationLogEntity>> cursorSearch(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long startTime,
+            @RequestParam(required = false) Long endTime,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean pit,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        log.info("[API] GET /api/logs/search/cursor");
+        return ApiResponse.success(operationLogService.searchEsCursor(keyword, startTime, endTime, size, cursor, pit));
+    }
 }
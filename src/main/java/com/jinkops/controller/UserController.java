@@ -3,6 +3,8 @@ package com.jinkops.controller;
 import com.jinkops.annotation.OperationLog;
 import com.jinkops.annotation.RequirePermission;
 import com.jinkops.entity.user.User;
+import com.jinkops.exception.BizException;
+import com.jinkops.exception.ErrorCode;
 import com.jinkops.service.UserService;
 import com.jinkops.vo.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
@@ -18,12 +20,15 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
+    private static final int MAX_BATCH_SIZE = 200;
+
     private final UserService userService;
 
     public UserController(UserService userService) {
@@ -39,6 +44,18 @@ public class UserController {
         return ApiResponse.success(userService.getAllUsers());
     }
 
+    // 一次查多個用戶名，快取與 DB 都是批次查，不會一個用戶一次來回
+    @OperationLog("批次查询用户")
+    @RequirePermission("sys:user:list")
+    @GetMapping("/batch")
+    public ApiResponse<Map<String, User>> getUsersByUsernames(@RequestParam List<String> usernames) {
+        log.info("[API] GET /api/users/batch");
+        if (usernames.size() > MAX_BATCH_SIZE) {
+            throw new BizException(ErrorCode.BAD_REQUEST, "一次最多查詢 " + MAX_BATCH_SIZE + " 個用戶");
+        }
+        return ApiResponse.success(userService.findByUsernames(usernames));
+    }
+
     // 根據用戶名查詢（自動帶快取）
     @OperationLog("查询用户详情")
     @RequirePermission("sys:user:list")
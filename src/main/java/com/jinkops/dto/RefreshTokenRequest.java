@@ -0,0 +1,11 @@
+package com.jinkops.dto;
+
+import lombok.Data;
+import lombok.ToString;
+
+@Data
+public class RefreshTokenRequest {
+    // 操作日誌會記參數，token 本身不能進日誌
+    @ToString.Exclude
+    private String refreshToken;
+}
@@ -0,0 +1,124 @@
+package com.jinkops.dto.log;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ES bulk 寫入的結果
+ *
+ * 每筆都帶自己的狀態（用傳進去的 List 下標對應），
+ * 呼叫端可以知道哪幾筆失敗、為什麼失敗、要不要再送
+ */
+public class BulkIndexResult {
+
+    /**
+     * 單筆最後的結果
+     */
+    public enum Outcome {
+        // 寫進去了
+        INDEXED,
+        // 429 / 503 這類暫時性錯誤，重試到上限還是沒成功，之後可以再送
+        RETRYABLE,
+        // mapping 錯誤之類的永久失敗，重送也沒用，由呼叫端 NACK 進死信佇列
+        REJECTED
+    }
+
+    /**
+     * 單筆狀態
+     */
+    public static class ItemStatus {
+
+        private final int position;
+        private final String docId;
+        private final int status;
+        private final Outcome outcome;
+        private final String reason;
+        private final int attempts;
+
+        public ItemStatus(int position, String docId, int status, Outcome outcome, String reason, int attempts) {
+            this.position = position;
+            this.docId = docId;
+            this.status = status;
+            this.outcome = outcome;
+            this.reason = reason;
+            this.attempts = attempts;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public String getDocId() {
+            return docId;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * 按下標排好的每筆狀態
+     */
+    private final List<ItemStatus> items;
+
+    public BulkIndexResult(List<ItemStatus> items) {
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    public static BulkIndexResult empty() {
+        return new BulkIndexResult(List.of());
+    }
+
+    // ===== getter =====
+
+    public List<ItemStatus> getItems() {
+        return items;
+    }
+
+    public int getTotal() {
+        return items.size();
+    }
+
+    public int getSucceeded() {
+        return count(Outcome.INDEXED);
+    }
+
+    public int getRetryable() {
+        return count(Outcome.RETRYABLE);
+    }
+
+    public int getRejected() {
+        return count(Outcome.REJECTED);
+    }
+
+    public boolean hasFailures() {
+        return getSucceeded() < getTotal();
+    }
+
+    public Outcome outcomeOf(int position) {
+        return items.get(position).getOutcome();
+    }
+
+    private int count(Outcome outcome) {
+        int count = 0;
+        for (ItemStatus item : items) {
+            if (item.getOutcome() == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,68 @@
+package com.jinkops.dto.log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 日誌游標分頁的位置
+ *
+ * 記上一頁最後一筆的 createTime + id（ES search_after 用），
+ * 有開 point-in-time 的話也一起帶著，前端拿到的是一串看不懂的 token
+ */
+public class LogSearchCursor {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 上一頁最後一筆的建立時間（毫秒）
+     */
+    private final long createTime;
+
+    /**
+     * 上一頁最後一筆的 id
+     */
+    private final long id;
+
+    /**
+     * point-in-time id，沒開就是 null
+     */
+    private final String pitId;
+
+    public LogSearchCursor(long createTime, long id, String pitId) {
+        this.createTime = createTime;
+        this.id = id;
+        this.pitId = pitId;
+    }
+
+    // 轉成給前端的 token
+    public String encode() {
+        String raw = createTime + SEPARATOR + id + SEPARATOR + (pitId == null ? "" : pitId);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 解析前端帶回來的 token，格式不對就丟 IllegalArgumentException
+    public static LogSearchCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = raw.split("\\|", 3);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        String pitId = parts.length == 3 && !parts[2].isEmpty() ? parts[2] : null;
+        return new LogSearchCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]), pitId);
+    }
+
+    // ===== getter =====
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPitId() {
+        return pitId;
+    }
+}
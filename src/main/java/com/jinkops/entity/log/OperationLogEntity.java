@@ -1,9 +1,8 @@
 package com.jinkops.entity.log;
 
+import com.jinkops.id.SnowflakeId;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
@@ -22,9 +21,10 @@ public class OperationLogEntity {
 
     public OperationLogEntity() {}
 
-    // 主鍵自增
+    // 主鍵由程式內發號（時間遞增），不走 IDENTITY，批次插入才不會被逐筆回查 id 卡住
+    // 同一個 id 也直接拿去當 ES 文件 id
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     // 操作人用戶名
@@ -0,0 +1,11 @@
+package com.jinkops.enums;
+
+// 操作日誌緩衝區滿了之後怎麼處理
+public enum LogOverflowPolicy {
+    // 等一下再放，最多等 offer-timeout，等不到就落盤
+    BLOCK,
+    // 直接丟掉，只記一筆警告
+    DROP,
+    // 寫到本機檔案，之後由寫入執行緒補回 DB
+    SPILL
+}
@@ -0,0 +1,19 @@
+package com.jinkops.enums;
+
+// 日誌關鍵字在 DB 裡走哪一條查詢路徑
+public enum LogSearchRoute {
+    // 沒有關鍵字
+    NONE,
+    // 32 位十六進位，當成 traceId 精確比對
+    TRACE_ID,
+    // IPv4 / IPv6 字面值
+    IP,
+    // user:xxx，用戶名精確比對
+    USERNAME,
+    // / 開頭，路徑前綴比對
+    URI_PREFIX,
+    // 其他文字走全文索引
+    FULLTEXT,
+    // 全文索引處理不了（太短或沒開），退回 LIKE 全表掃
+    LIKE
+}
@@ -0,0 +1,20 @@
+package com.jinkops.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 主鍵改由程式內的 SnowflakeIdWorker 產生，不靠 DB 自增。
+ * 這樣 Hibernate 插入前就拿得到 id，jdbc.batch_size 才能真的批次送出。
+ */
+@IdGeneratorType(SnowflakeIdGenerator.class)
+@Target({ElementType.FIELD, ElementType.METHOD}) // 標在 @Id 欄位上
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SnowflakeId {
+}
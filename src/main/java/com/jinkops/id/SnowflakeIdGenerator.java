@@ -0,0 +1,13 @@
+package com.jinkops.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+// Hibernate 產生主鍵時的入口，實際發號交給 SnowflakeIdWorker
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return SnowflakeIdWorker.nextId();
+    }
+}
@@ -0,0 +1,80 @@
+package com.jinkops.id;
+
+/**
+ * 程式內發號器，產生隨時間遞增的 Long id。
+ *
+ * 位元配置：41 bit 毫秒時間戳 + 5 bit workerId + 7 bit 序號，共 53 bit。
+ * 刻意壓在 53 bit 以內，前端 JS 的 number 拿到也不會掉精度；
+ * 單節點每毫秒 128 個 id，給操作日誌用綽綽有餘。
+ */
+public final class SnowflakeIdWorker {
+
+    // 2024-01-01T00:00:00Z，41 bit 大約能用 69 年
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int WORKER_BITS = 5;
+    private static final int SEQUENCE_BITS = 7;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int WORKER_SHIFT = SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_BITS;
+
+    private static volatile long workerId;
+
+    private static long lastTimestamp = -1L;
+    private static long sequence;
+
+    private SnowflakeIdWorker() {
+    }
+
+    // 啟動時由 IdGeneratorConfig 設定，多節點部署每台要不一樣
+    public static void configure(long id) {
+        if (id < 0 || id > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be between 0 and " + MAX_WORKER_ID);
+        }
+        workerId = id;
+    }
+
+    public static long workerId() {
+        return workerId;
+    }
+
+    public static synchronized long nextId() {
+        long now = System.currentTimeMillis();
+        if (now < lastTimestamp) {
+            // 時鐘回撥就沿用上一次的時間戳往下發，不讓 id 倒退
+            now = lastTimestamp;
+        }
+
+        if (now == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 這一毫秒的序號用完了，等下一毫秒
+                now = waitNextMillis(lastTimestamp);
+            }
+        } else {
+            sequence = 0;
+        }
+
+        lastTimestamp = now;
+        return ((now - EPOCH) << TIMESTAMP_SHIFT)
+                | (workerId << WORKER_SHIFT)
+                | sequence;
+    }
+
+    // 從 id 反推產生時間（毫秒），排查問題時用
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    private static long waitNextMillis(long last) {
+        long now = System.currentTimeMillis();
+        while (now <= last) {
+            Thread.onSpinWait();
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+}
@@ -1,14 +1,18 @@
 package com.jinkops.mq.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -81,4 +85,35 @@ public class RabbitConfig {
     public Jackson2JsonMessageConverter jackson2JsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
     }
+
+    // 操作日誌批次消費用的容器工廠
+    public static final String OPERATION_LOG_BATCH_FACTORY = "operationLogBatchContainerFactory";
+
+    // 一批最多幾筆
+    @Value("${app.mq.operation-log.batch-size:200}")
+    private int operationLogBatchSize;
+
+    // 湊不滿一批時，最多等多久就先送出
+    @Value("${app.mq.operation-log.receive-timeout-ms:1000}")
+    private long operationLogReceiveTimeoutMs;
+
+    // 預取數量，至少要大於一批
+    @Value("${app.mq.operation-log.prefetch:500}")
+    private int operationLogPrefetch;
+
+    @Bean(OPERATION_LOG_BATCH_FACTORY)
+    public SimpleRabbitListenerContainerFactory operationLogBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        // 先套 spring.rabbitmq.listener.simple 的設定，再改成批次模式
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(Math.max(operationLogBatchSize, 1));
+        factory.setReceiveTimeout(operationLogReceiveTimeoutMs);
+        factory.setPrefetchCount(Math.max(operationLogPrefetch, operationLogBatchSize));
+        return factory;
+    }
 }
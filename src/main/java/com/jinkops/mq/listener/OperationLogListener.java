@@ -1,9 +1,12 @@
 package com.jinkops.mq.listener;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.IndexResponse;
+import com.jinkops.dto.log.BulkIndexResult;
 import com.jinkops.entity.log.OperationLogEntity;
 import com.jinkops.mq.config.RabbitConfig;
+import com.jinkops.service.es.OperationLogEsService;
+import com.jinkops.service.es.OperationLogIndexWatermark;
+import com.jinkops.service.es.OperationLogIndices;
 import com.rabbitmq.client.Channel;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
@@ -12,11 +15,11 @@ import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
 import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.stereotype.Component;
 
-import java.time.ZoneId;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @Slf4j
@@ -24,111 +27,144 @@ import java.util.Map;
 public class OperationLogListener {
 
     public static final String LISTENER_ID = "operationLogListener";
-    private static final String INDEX_NAME = "operation_log_search";
 
     private final ElasticsearchClient elasticsearchClient;
+    private final OperationLogEsService operationLogEsService;
+    private final OperationLogIndexWatermark indexWatermark;
+    private final Jackson2JsonMessageConverter messageConverter;
     private final RabbitListenerEndpointRegistry rabbitListenerEndpointRegistry;
 
+    // 按月滾動索引：先放好 index template（mapping + 讀別名），之後每個月的索引在第一次寫入時由 ES 自動建立
     @PostConstruct
     public void ensureIndex() {
         log.info("[MQ] operation log listener ready queue={}", RabbitConfig.EVENT_LOG_QUEUE);
         try {
-            boolean exists = elasticsearchClient.indices()
-                    .exists(e -> e.index(INDEX_NAME))
-                    .value();
+            elasticsearchClient.indices().putIndexTemplate(t -> t
+                    .name(OperationLogIndices.TEMPLATE_NAME)
+                    .indexPatterns(OperationLogIndices.INDEX_PATTERN)
+                    .template(tm -> tm
+                            .aliases(OperationLogIndices.READ_ALIAS, a -> a)
+                            .mappings(m -> m
+                                    .properties("id", p -> p.long_(l -> l))
+                                    .properties("username", p -> p.keyword(k -> k))
+                                    .properties("operation", p -> p.text(tx -> tx))
+                                    .properties("traceId", p -> p.keyword(k -> k))
+                                    .properties("className", p -> p.keyword(k -> k))
+                                    .properties("methodName", p -> p.keyword(k -> k))
+                                    .properties("args", p -> p.text(tx -> tx))
+                                    .properties("description", p -> p.text(tx -> tx))
+                                    .properties("elapsedTime", p -> p.long_(l -> l))
+                                    .properties("createTime", p -> p.date(d -> d))
+                                    .properties("uri", p -> p.keyword(k -> k))
+                                    .properties("httpMethod", p -> p.keyword(k -> k))
+                                    .properties("ip", p -> p.keyword(k -> k))
+                            )));
+
+            // 當月索引先建好，讀別名一開始就有東西可以查
+            String current = OperationLogIndices.writeIndex(null);
+            boolean exists = elasticsearchClient.indices().exists(e -> e.index(current)).value();
             if (!exists) {
-                elasticsearchClient.indices().create(c -> c
-                        .index(INDEX_NAME)
-                        .mappings(m -> m
-                                .properties("username", p -> p.keyword(k -> k))
-                                .properties("operation", p -> p.text(t -> t))
-                                .properties("traceId", p -> p.keyword(k -> k))
-                                .properties("className", p -> p.keyword(k -> k))
-                                .properties("methodName", p -> p.keyword(k -> k))
-                                .properties("args", p -> p.text(t -> t))
-                                .properties("description", p -> p.text(t -> t))
-                                .properties("elapsedTime", p -> p.long_(l -> l))
-                                .properties("createTime", p -> p.date(d -> d))
-                                .properties("uri", p -> p.keyword(k -> k))
-                                .properties("httpMethod", p -> p.keyword(k -> k))
-                                .properties("ip", p -> p.keyword(k -> k))
-                        ));
-                log.info("[MQ] created index {}", INDEX_NAME);
+                elasticsearchClient.indices().create(c -> c.index(current));
+                log.info("[MQ] created index {}", current);
+            }
+
+            // 升級前的單一索引也掛到讀別名上，舊資料照樣查得到
+            boolean legacyExists = elasticsearchClient.indices()
+                    .exists(e -> e.index(OperationLogIndices.LEGACY_INDEX))
+                    .value();
+            if (legacyExists) {
+                elasticsearchClient.indices().updateAliases(u -> u.actions(act -> act
+                        .add(add -> add.index(OperationLogIndices.LEGACY_INDEX).alias(OperationLogIndices.READ_ALIAS))));
             }
         } catch (Exception e) {
-            log.warn("[MQ] failed to ensure index {}: {}", INDEX_NAME, e.getMessage());
+            log.warn("[MQ] failed to ensure index template {}: {}", OperationLogIndices.TEMPLATE_NAME, e.getMessage());
         }
     }
 
+    // 批次消費：湊滿 batch-size 或等到 receive-timeout 就一次 bulk 寫 ES
     @RabbitListener(
             id = LISTENER_ID,
             queues = RabbitConfig.EVENT_LOG_QUEUE,
-            ackMode = "MANUAL",
+            containerFactory = RabbitConfig.OPERATION_LOG_BATCH_FACTORY,
             autoStartup = "true"
     )
-    public void onMessage(
-            OperationLogEntity entity,
-            Message message,
-            Channel channel
-    ) throws Exception {
+    public void onMessages(List<Message> messages, Channel channel) throws Exception {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
 
-        long tag = message.getMessageProperties().getDeliveryTag();
+        List<OperationLogEntity> entities = new ArrayList<>(messages.size());
+        List<Long> tags = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            long tag = message.getMessageProperties().getDeliveryTag();
+            OperationLogEntity entity = convert(message);
+            if (entity == null) {
+                // 轉不出來的訊息重送也沒用，直接丟死信
+                channel.basicNack(tag, false, false);
+                log.warn("[MQ] consume skip unreadable message tag={} dlq=true", tag);
+                continue;
+            }
+            entities.add(entity);
+            tags.add(tag);
+        }
+
+        if (entities.isEmpty()) {
+            return;
+        }
 
+        BulkIndexResult result;
         try {
             // 先寫 ES，再決定 ACK / 重試
-            indexToEs(entity);
-
-            channel.basicAck(tag, false);
-            log.info("[MQ] consume success dlq=false source=ES");
-
+            result = operationLogEsService.bulkIndex(entities);
         } catch (Exception e) {
-            // ES 掛掉就先放回主隊列，然後暫停消費者，等 Quartz 偵測恢復後再繼續。
-            log.error("[MQ] consume failed requeue=true pauseConsumer=true reason={}", e.getMessage(), e);
-            channel.basicNack(tag, false, true);
-            MessageListenerContainer container =
-                    rabbitListenerEndpointRegistry.getListenerContainer(LISTENER_ID);
-            if (container != null && container.isRunning()) {
-                container.stop();
-                log.warn("[MQ] paused operation log consumer because ES write failed");
+            // ES 掛掉就整批放回主隊列，然後暫停消費者，等 Quartz 偵測恢復後再繼續。
+            log.error("[MQ] consume batch failed size={} requeue=true pauseConsumer=true reason={}",
+                    entities.size(), e.getMessage(), e);
+            channel.basicNack(tags.get(tags.size() - 1), true, true);
+            pauseConsumer();
+            return;
+        }
+
+        // 重試到上限還是被 ES 限流的逐筆放回佇列；
+        // 永久失敗的逐筆 NACK 不重排，由佇列的 DLX 轉進死信佇列，不另外發訊息，發失敗也不會被 ACK 掉；
+        // 放回和丟棄的 tag 已經不在待確認清單裡，成功的再用 multiple=true 一次 ACK
+        long lastAckTag = -1;
+        for (int i = 0; i < tags.size(); i++) {
+            long tag = tags.get(i);
+            BulkIndexResult.Outcome outcome = result.outcomeOf(i);
+            if (outcome == BulkIndexResult.Outcome.RETRYABLE) {
+                channel.basicNack(tag, false, true);
+            } else if (outcome == BulkIndexResult.Outcome.REJECTED) {
+                channel.basicNack(tag, false, false);
+            } else {
+                lastAckTag = Math.max(lastAckTag, tag);
             }
         }
+        if (lastAckTag > 0) {
+            channel.basicAck(lastAckTag, true);
+        }
+        // 告訴查詢端 ES 已經追到哪裡了
+        indexWatermark.advance(entities, result);
+        log.info("[MQ] consume batch done size={} indexed={} requeued={} dlq={} source=ES",
+                entities.size(), result.getSucceeded(), result.getRetryable(), result.getRejected());
     }
 
-    private void indexToEs(OperationLogEntity entity) throws Exception {
-        if (entity == null) {
-            throw new IllegalArgumentException("operation log entity is null");
+    private OperationLogEntity convert(Message message) {
+        try {
+            Object body = messageConverter.fromMessage(message);
+            return body instanceof OperationLogEntity entity ? entity : null;
+        } catch (Exception e) {
+            log.warn("[MQ] convert operation log message failed reason={}", e.getMessage());
+            return null;
         }
+    }
 
-        String docId = entity.getId() != null
-                ? String.valueOf(entity.getId())
-                : entity.getTraceId();
-
-        Map<String, Object> doc = new HashMap<>();
-        doc.put("id", entity.getId());
-        doc.put("username", entity.getUsername());
-        doc.put("operation", entity.getOperation());
-        doc.put("traceId", entity.getTraceId());
-        doc.put("className", entity.getClassName());
-        doc.put("methodName", entity.getMethodName());
-        doc.put("args", entity.getArgs());
-        doc.put("description", entity.getDescription());
-        doc.put("elapsedTime", entity.getElapsedTime());
-        doc.put("uri", entity.getUri());
-        doc.put("httpMethod", entity.getHttpMethod());
-        doc.put("ip", entity.getIp());
-        if (entity.getCreateTime() != null) {
-            long epochMillis = entity.getCreateTime()
-                    .atZone(ZoneId.systemDefault())
-                    .toInstant()
-                    .toEpochMilli();
-            doc.put("createTime", epochMillis);
+    private void pauseConsumer() {
+        MessageListenerContainer container =
+                rabbitListenerEndpointRegistry.getListenerContainer(LISTENER_ID);
+        if (container != null && container.isRunning()) {
+            container.stop();
+            log.warn("[MQ] paused operation log consumer because ES write failed");
         }
-
-        IndexResponse response = elasticsearchClient.index(i -> i
-                        .index(INDEX_NAME)
-                        .id(docId)
-                        .document(doc)
-        );
-        log.info("[MQ] indexed operation log to ES id={} result={}", docId, response.result());
     }
 }
@@ -1,17 +1,34 @@
 package com.jinkops.quartz.config;
 
+import com.jinkops.quartz.job.JwtKeyRotationJob;
+import com.jinkops.quartz.job.OperationLogRetentionJob;
 import com.jinkops.quartz.job.ScanFailedOperationLogJob;
+import com.jinkops.quartz.job.TokenRevocationRebuildJob;
+import org.quartz.CronScheduleBuilder;
 import org.quartz.JobDetail;
 import org.quartz.JobBuilder;
 import org.quartz.SimpleScheduleBuilder;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class QuartzConfig {
 
+    // 操作日誌保留期任務，預設每天凌晨 3:30
+    @Value("${app.log.retention.cron:0 30 3 * * ?}")
+    private String retentionCron;
+
+    // JWT 金鑰維護（輪替 / 延長 / 清退役公鑰），預設每 10 分鐘
+    @Value("${app.security.jwt.keys.maintain-cron:0 */10 * * * ?}")
+    private String jwtKeyMaintainCron;
+
+    // token 撤銷清單本機 filter 重建，預設每 5 分鐘
+    @Value("${app.security.jwt.revocation.rebuild-cron:0 */5 * * * ?}")
+    private String revocationRebuildCron;
+
     /**
      * JobDetail：定義要跑哪個 Job
      */
@@ -40,4 +57,55 @@ public class QuartzConfig {
                 .withSchedule(schedule)
                 .build();
     }
+
+    @Bean
+    public JobDetail operationLogRetentionJobDetail() {
+        return JobBuilder.newJob(OperationLogRetentionJob.class)
+                .withIdentity("operationLogRetentionJob")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger operationLogRetentionJobTrigger() {
+        return TriggerBuilder.newTrigger()
+                .forJob(operationLogRetentionJobDetail())
+                .withIdentity("operationLogRetentionTrigger")
+                .withSchedule(CronScheduleBuilder.cronSchedule(retentionCron))
+                .build();
+    }
+
+    @Bean
+    public JobDetail jwtKeyRotationJobDetail() {
+        return JobBuilder.newJob(JwtKeyRotationJob.class)
+                .withIdentity("jwtKeyRotationJob")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger jwtKeyRotationJobTrigger() {
+        return TriggerBuilder.newTrigger()
+                .forJob(jwtKeyRotationJobDetail())
+                .withIdentity("jwtKeyRotationTrigger")
+                .withSchedule(CronScheduleBuilder.cronSchedule(jwtKeyMaintainCron))
+                .build();
+    }
+
+    @Bean
+    public JobDetail tokenRevocationRebuildJobDetail() {
+        return JobBuilder.newJob(TokenRevocationRebuildJob.class)
+                .withIdentity("tokenRevocationRebuildJob")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger tokenRevocationRebuildJobTrigger() {
+        return TriggerBuilder.newTrigger()
+                .forJob(tokenRevocationRebuildJobDetail())
+                .withIdentity("tokenRevocationRebuildTrigger")
+                .withSchedule(CronScheduleBuilder.cronSchedule(revocationRebuildCron))
+                .build();
+    }
 }
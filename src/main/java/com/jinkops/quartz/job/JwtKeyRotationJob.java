@@ -0,0 +1,40 @@
+package com.jinkops.quartz.job;
+
+import com.jinkops.util.JwtKeyRing;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * JWT 金鑰維護任務。
+ *
+ * 每台各自跑（Quartz 是 memory store）：本機金鑰到期就換新的，
+ * 沒到期就把目前這把公鑰的退役時間往後延，再清掉 Redis 裡已經退役的公鑰。
+ * HS256 模式下什麼都不做。
+ */
+@Slf4j
+@Component
+@DisallowConcurrentExecution
+@RequiredArgsConstructor
+public class JwtKeyRotationJob implements Job {
+
+    private final JwtKeyRing keyRing;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        long start = System.currentTimeMillis();
+        String before = keyRing.current().kid();
+        try {
+            keyRing.maintain();
+            log.info("[Quartz] jwt key maintenance success cost={}ms keyResult=kid={},rotated={}",
+                    System.currentTimeMillis() - start, keyRing.current().kid(),
+                    !before.equals(keyRing.current().kid()));
+        } catch (Exception e) {
+            // Redis 暫時連不上就沿用目前的金鑰，下一輪再試
+            log.warn("[Quartz] jwt key maintenance failed reason={}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.jinkops.quartz.job;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.jinkops.service.es.OperationLogIndices;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 操作日誌保留期任務。
+ *
+ * MySQL：從 pmax 預先切出未來幾個月的分區，過了保留期的月份整個 DROP PARTITION。
+ * ES：刪掉過了保留期的月份索引。
+ * 兩邊都是整塊丟掉，不逐筆 DELETE，不會產生大量 undo / 碎片。
+ * 表還沒分區（沒跑 db/operation_log_partitioning.sql）時只處理 ES。
+ */
+@Slf4j
+@Component
+@DisallowConcurrentExecution
+@RequiredArgsConstructor
+public class OperationLogRetentionJob implements Job {
+
+    private static final String TABLE = "operation_log";
+    private static final String MAX_PARTITION = "pmax";
+    private static final Pattern MONTH_PARTITION = Pattern.compile("^p\\d{6}$");
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ElasticsearchClient elasticsearchClient;
+
+    // 保留幾個月（含當月）
+    @Value("${app.log.retention.months:6}")
+    private int retentionMonths;
+
+    // 往後預建幾個月的分區
+    @Value("${app.log.retention.premake-months:2}")
+    private int premakeMonths;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        long start = System.currentTimeMillis();
+        YearMonth now = YearMonth.now();
+        // 早於這個月份的都過期
+        YearMonth cutoff = now.minusMonths(Math.max(retentionMonths, 1) - 1L);
+        log.info("[Quartz] operation log retention start keyParams=retentionMonths={},cutoff={}",
+                retentionMonths, cutoff);
+
+        int droppedPartitions = maintainPartitions(now, cutoff);
+        int droppedIndices = dropExpiredIndices(cutoff);
+
+        log.info("[Quartz] operation log retention success cost={}ms keyResult=droppedPartitions={},droppedIndices={}",
+                System.currentTimeMillis() - start, droppedPartitions, droppedIndices);
+    }
+
+    private int maintainPartitions(YearMonth now, YearMonth cutoff) {
+        try {
+            List<String> partitions = jdbcTemplate.queryForList(
+                    "SELECT PARTITION_NAME FROM information_schema.PARTITIONS "
+                            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL",
+                    String.class, TABLE);
+            if (partitions.isEmpty()) {
+                log.info("[Quartz] table {} is not partitioned, skip partition maintenance", TABLE);
+                return 0;
+            }
+
+            // 先預建，之後的資料才不會都擠在 pmax
+            if (partitions.contains(MAX_PARTITION)) {
+                for (int i = 0; i <= premakeMonths; i++) {
+                    YearMonth month = now.plusMonths(i);
+                    String name = partitionName(month);
+                    if (partitions.contains(name)) {
+                        continue;
+                    }
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO ("
+                            + "PARTITION " + name + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + " 00:00:00'), "
+                            + "PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+                    partitions.add(name);
+                    log.info("[Quartz] created partition {}.{}", TABLE, name);
+                }
+            }
+
+            List<String> expired = new ArrayList<>();
+            for (String name : partitions) {
+                YearMonth month = monthOfPartition(name);
+                if (month != null && month.isBefore(cutoff)) {
+                    expired.add(name);
+                }
+            }
+            if (!expired.isEmpty()) {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(",", expired));
+                log.info("[Quartz] dropped partitions {} of {}", expired, TABLE);
+            }
+            return expired.size();
+        } catch (Exception e) {
+            // 多台同時跑時後到的會撞到「分區已存在 / 不存在」，下一輪再看就好
+            log.warn("[Quartz] operation log partition maintenance failed reason={}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private int dropExpiredIndices(YearMonth cutoff) {
+        try {
+            List<String> expired = new ArrayList<>();
+            elasticsearchClient.indices()
+                    .get(g -> g.index(OperationLogIndices.INDEX_PATTERN).allowNoIndices(true))
+                    .result()
+                    .keySet()
+                    .forEach(name -> {
+                        YearMonth month = OperationLogIndices.monthOf(name);
+                        if (month != null && month.isBefore(cutoff)) {
+                            expired.add(name);
+                        }
+                    });
+            if (!expired.isEmpty()) {
+                elasticsearchClient.indices().delete(d -> d.index(expired));
+                log.info("[Quartz] deleted expired ES indices {}", expired);
+            }
+            return expired.size();
+        } catch (Exception e) {
+            log.warn("[Quartz] operation log index retention failed reason={}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private String partitionName(YearMonth month) {
+        return "p" + month.format(PARTITION_FORMAT);
+    }
+
+    private YearMonth monthOfPartition(String name) {
+        if (name == null || !MONTH_PARTITION.matcher(name).matches()) {
+            return null;
+        }
+        return YearMonth.parse(name.substring(1), PARTITION_FORMAT);
+    }
+}
@@ -0,0 +1,36 @@
+package com.jinkops.quartz.job;
+
+import com.jinkops.service.TokenRevocationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * 撤銷清單重建任務。
+ *
+ * 每台各自從 Redis 索引重建本機的 Bloom filter：補上漏收的廣播，也把已經過期的 jti 清出去。
+ */
+@Slf4j
+@Component
+@DisallowConcurrentExecution
+@RequiredArgsConstructor
+public class TokenRevocationRebuildJob implements Job {
+
+    private final TokenRevocationService tokenRevocationService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        long start = System.currentTimeMillis();
+        try {
+            int count = tokenRevocationService.rebuild();
+            log.info("[Quartz] token revocation rebuild success cost={}ms keyResult=revoked={}",
+                    System.currentTimeMillis() - start, count);
+        } catch (Exception e) {
+            // 重建失敗就繼續用舊的 filter，下一輪再試
+            log.warn("[Quartz] token revocation rebuild failed reason={}", e.getMessage());
+        }
+    }
+}
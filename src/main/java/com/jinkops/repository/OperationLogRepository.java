@@ -15,26 +15,104 @@ import java.util.List;
 @Repository
 public interface OperationLogRepository extends JpaRepository<OperationLogEntity, Long> {
 
-    // 模糊查詢操作日誌（根據用戶名或操作描述）
-    @Query(
-            "SELECT l FROM OperationLogEntity l " +
-                    "WHERE LOWER(l.username) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.operation) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.description) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.args) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.traceId) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.className) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.methodName) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.uri) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.httpMethod) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "   OR LOWER(l.ip) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-                    "ORDER BY l.createTime DESC"
-    )
-    Page<OperationLogEntity> searchLogs(
+    // 以下幾個是關鍵字查詢的索引路徑，由 OperationLogService 依關鍵字長相挑一條走
+    // 索引定義在 resources/db/operation_log_indexes.sql
+
+    // traceId 精確比對（idx_operation_log_trace_id）
+    @Query("""
+    SELECT l FROM OperationLogEntity l
+    WHERE l.traceId = :traceId
+      AND (:start IS NULL OR l.createTime >= :start)
+      AND (:end IS NULL OR l.createTime <= :end)
+    ORDER BY l.createTime DESC, l.id DESC
+""")
+    Page<OperationLogEntity> searchByTraceId(
+            @Param("traceId") String traceId,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            Pageable pageable
+    );
+
+    // IP 精確比對（idx_operation_log_ip）
+    @Query("""
+    SELECT l FROM OperationLogEntity l
+    WHERE l.ip = :ip
+      AND (:start IS NULL OR l.createTime >= :start)
+      AND (:end IS NULL OR l.createTime <= :end)
+    ORDER BY l.createTime DESC, l.id DESC
+""")
+    Page<OperationLogEntity> searchByIp(
+            @Param("ip") String ip,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            Pageable pageable
+    );
+
+    // 用戶名精確比對（idx_operation_log_username）
+    @Query("""
+    SELECT l FROM OperationLogEntity l
+    WHERE l.username = :username
+      AND (:start IS NULL OR l.createTime >= :start)
+      AND (:end IS NULL OR l.createTime <= :end)
+    ORDER BY l.createTime DESC, l.id DESC
+""")
+    Page<OperationLogEntity> searchByUsername(
+            @Param("username") String username,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            Pageable pageable
+    );
+
+    // 路徑前綴比對，前綴 LIKE 用得到 idx_operation_log_uri
+    @Query("""
+    SELECT l FROM OperationLogEntity l
+    WHERE l.uri LIKE CONCAT(:uri, '%')
+      AND (:start IS NULL OR l.createTime >= :start)
+      AND (:end IS NULL OR l.createTime <= :end)
+    ORDER BY l.createTime DESC, l.id DESC
+""")
+    Page<OperationLogEntity> searchByUriPrefix(
+            @Param("uri") String uri,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            Pageable pageable
+    );
+
+    // 全文索引（ngram parser，中文也能切）；keyword 要先整理成 BOOLEAN MODE 的片語
+    // 只涵蓋長文字欄位；用戶名、traceId、IP、路徑這些短欄位走各自的 B-tree 路徑，這裡不另外 LIKE 補
+    @Query(nativeQuery = true, value = """
+    SELECT * FROM operation_log l
+    WHERE MATCH(l.operation, l.description, l.args, l.class_name, l.method_name)
+          AGAINST (:keyword IN BOOLEAN MODE)
+      AND (:start IS NULL OR l.create_time >= :start)
+      AND (:end IS NULL OR l.create_time <= :end)
+    ORDER BY l.create_time DESC, l.id DESC
+""")
+    List<OperationLogEntity> searchFullText(
             @Param("keyword") String keyword,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
             Pageable pageable
     );
 
+    // 全文路徑的筆數：跟 LIKE 兜底一樣最多數到 cap
+    @Query(nativeQuery = true, value = """
+    SELECT COUNT(*) FROM (
+        SELECT l.id FROM operation_log l
+        WHERE MATCH(l.operation, l.description, l.args, l.class_name, l.method_name)
+              AGAINST (:keyword IN BOOLEAN MODE)
+          AND (:start IS NULL OR l.create_time >= :start)
+          AND (:end IS NULL OR l.create_time <= :end)
+        LIMIT :cap
+    ) t
+""")
+    long countFullText(
+            @Param("keyword") String keyword,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            @Param("cap") int cap
+    );
+
     // 時間區間查詢
     @Query("""
         SELECT l FROM OperationLogEntity l
@@ -57,7 +135,8 @@ public interface OperationLogRepository extends JpaRepository<OperationLogEntity
             @Param("threshold") LocalDateTime threshold
     );
 
-    // ES 掛掉時的 DB 兜底搜尋（非分頁）
+    // 十個欄位 LIKE 的全表掃描，只留給全文索引處理不了的關鍵字（太短或沒開全文索引）
+    // 只撈當頁（LIMIT/OFFSET 由 Pageable 帶），不再整包載入
     @Query("""
     SELECT l FROM OperationLogEntity l
     WHERE (:keyword IS NULL
@@ -73,12 +152,68 @@ public interface OperationLogRepository extends JpaRepository<OperationLogEntity
            OR LOWER(l.ip) LIKE LOWER(CONCAT('%', :keyword, '%')))
       AND (:start IS NULL OR l.createTime >= :start)
       AND (:end IS NULL OR l.createTime <= :end)
-    ORDER BY l.createTime DESC
+    ORDER BY l.createTime DESC, l.id DESC
 """)
     List<OperationLogEntity> searchForEsFallback(
             @Param("keyword") String keyword,
             @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end
+            @Param("end") LocalDateTime end,
+            Pageable pageable
+    );
+
+    // 游標翻頁的 DB 兜底：接在 (createTime, id) 後面往下查，深頁不用跳過前面的資料
+    @Query("""
+    SELECT l FROM OperationLogEntity l
+    WHERE (:keyword IS NULL
+           OR LOWER(l.username) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.operation) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.description) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.args) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.traceId) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.className) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.methodName) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.uri) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.httpMethod) LIKE LOWER(CONCAT('%', :keyword, '%'))
+           OR LOWER(l.ip) LIKE LOWER(CONCAT('%', :keyword, '%')))
+      AND (:start IS NULL OR l.createTime >= :start)
+      AND (:end IS NULL OR l.createTime <= :end)
+      AND (l.createTime < :afterTime OR (l.createTime = :afterTime AND l.id < :afterId))
+    ORDER BY l.createTime DESC, l.id DESC
+""")
+    List<OperationLogEntity> searchForEsFallbackAfter(
+            @Param("keyword") String keyword,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            @Param("afterTime") LocalDateTime afterTime,
+            @Param("afterId") Long afterId,
+            Pageable pageable
+    );
+
+    // 兜底搜尋的筆數：最多數到 cap 就停，常見關鍵字也不會把整張表數一遍
+    @Query(nativeQuery = true, value = """
+    SELECT COUNT(*) FROM (
+        SELECT 1 FROM operation_log l
+        WHERE (:keyword IS NULL
+               OR LOWER(l.username) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.operation) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.description) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.args) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.trace_id) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.class_name) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.method_name) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.uri) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.http_method) LIKE LOWER(CONCAT('%', :keyword, '%'))
+               OR LOWER(l.ip) LIKE LOWER(CONCAT('%', :keyword, '%')))
+          AND (:start IS NULL OR l.create_time >= :start)
+          AND (:end IS NULL OR l.create_time <= :end)
+        LIMIT :cap
+    ) t
+""")
+    long countForEsFallback(
+            @Param("keyword") String keyword,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end,
+            @Param("cap") int cap
     );
 
     // 全空時兜底最近 100 筆
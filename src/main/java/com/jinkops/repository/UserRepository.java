@@ -1,13 +1,23 @@
 package com.jinkops.repository;
 
 import com.jinkops.entity.user.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 // 繼承 JpaRepository<User, Long> 自動生成增刪改查
 public interface UserRepository extends JpaRepository<User, Long> {
 
     // 按用戶名查
     User findByUsername(String username);
+    // 按用戶名查，角色與權限一起 join 出來（權限回源用）
+    @EntityGraph(attributePaths = {"roles", "roles.permissions"})
+    User findWithRolesByUsername(String username);
+    // 按用戶名批次查，角色與權限一起 join 出來，一次 IN 查詢不會變成 N+1
+    @EntityGraph(attributePaths = {"roles", "roles.permissions"})
+    List<User> findByUsernameIn(Collection<String> usernames);
     // 刪除用戶
     void deleteUserByUsername(String username);
 }
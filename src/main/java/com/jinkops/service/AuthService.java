@@ -7,6 +7,7 @@ import com.jinkops.exception.BizException;
 import com.jinkops.exception.ErrorCode;
 import com.jinkops.util.JwtUtil;
 import com.jinkops.vo.LoginResponse;
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -15,6 +16,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -25,7 +27,11 @@ public class AuthService {
 
     private final AuthenticationManager authenticationManager;
     private final PermissionCache permissionCache;
+    private final PermissionRegistry permissionRegistry;
     private final JwtUtil jwtUtil;
+    private final TokenRevocationService tokenRevocationService;
+    private final RefreshTokenService refreshTokenService;
+    private final PermissionResolver permissionResolver;
 
     // 登入流程：成功則回傳 token
     public LoginResponse login(User user) {
@@ -50,18 +56,23 @@ public class AuthService {
                     .map(String::toUpperCase)
                     .collect(Collectors.toSet());
 
-            // 寫入 Redis 快取
-            permissionCache.set(user.getUsername(), perms);
+            // 轉成 bitset 寫入 Redis 快取
+            long version = permissionCache.version();
+            permissionCache.set(version, user.getUsername(), permissionRegistry.snapshot(version).encode(perms));
             // 順手標記一下，這樣操作日誌能看出登入時有把權限放進 Redis。
             AuditContext.put("permissionRedis", "SET");
             AuditContext.put("permissionCount", perms.size());
 
-            // 生成 token
-            String token = jwtUtil.generateToken(user.getUsername());
+            // 生成 token：帶上角色碼與權限版本，之後每個請求都不用再查 DB 建立登入態
+            List<String> roles = perms.stream()
+                    .filter(p -> p.startsWith("ROLE_"))
+                    .map(p -> p.substring("ROLE_".length()))
+                    .toList();
+            String token = jwtUtil.generateToken(user.getUsername(), roles, version);
+            // refresh token 記著同一份角色碼與版本，換發時不用再跑 BCrypt
+            String refreshToken = refreshTokenService.issue(user.getUsername(), roles, version);
 
-            // 組裝 LoginResponse
-            LoginResponse resp = new LoginResponse();
-            resp.setToken(token);
+            LoginResponse resp = response(token, refreshToken);
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] login success cost={}ms keyResult=user={}", cost, user.getUsername());
             return resp;
@@ -72,12 +83,48 @@ public class AuthService {
         }
     }
 
+    /**
+     * 用 refresh token 換一組新的 access / refresh token，不重跑帳密驗證。
+     * 權限版本沒變就沿用登入時記下的角色碼；變了才重新解析一次並記回去，用戶已被刪就整個作廢。
+     */
+    public LoginResponse refresh(String refreshToken) {
+        long start = System.currentTimeMillis();
+        log.info("[SERVICE] refresh start keyParams=refreshToken");
+        RefreshTokenService.Session session = refreshTokenService.rotate(refreshToken);
+        String username = session.username();
+        List<String> roles = session.roles();
+        long version = permissionResolver.currentVersion();
+        AuditContext.put("refreshAuthorities", version == session.permissionVersion() ? "REUSE" : "RESOLVE");
+        if (version != session.permissionVersion()) {
+            PermissionResolver.Resolved resolved = permissionResolver.resolve(username);
+            if (resolved == null) {
+                refreshTokenService.revokeFamily(session.familyId());
+                log.warn("[SERVICE] refresh failed reason=user_not_found user={}", username);
+                throw new BizException(ErrorCode.UNAUTHORIZED);
+            }
+            roles = resolved.snapshot().decode(resolved.bits()).stream()
+                    .filter(p -> p.startsWith("ROLE_"))
+                    .map(p -> p.substring("ROLE_".length()))
+                    .toList();
+            refreshTokenService.updateAuthorities(session.familyId(), roles, version);
+        }
+
+        String token = jwtUtil.generateToken(username, roles, version);
+        long cost = System.currentTimeMillis() - start;
+        log.info("[SERVICE] refresh success cost={}ms keyResult=user={}", cost, username);
+        return response(token, session.refreshToken());
+    }
+
     // 只做 JWT 解碼與校驗，不需要登入態
     public String verify(String token) {
         long start = System.currentTimeMillis();
         log.info("[SERVICE] verify start keyParams=token");
         try {
-            String username = jwtUtil.parseToken(token).getSubject();
+            Claims claims = jwtUtil.verify(token);
+            if (tokenRevocationService.isRevoked(claims)) {
+                throw new BizException(ErrorCode.UNAUTHORIZED, "Token 已撤銷");
+            }
+            String username = claims.getSubject();
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] verify success cost={}ms keyResult=user={}", cost, username);
             return username;
@@ -86,4 +133,32 @@ public class AuthService {
             throw new BizException(ErrorCode.UNAUTHORIZED);
         }
     }
+
+    // 登出：撤銷這張 token，之後所有節點都不再接受；有帶 refresh token 就連同整個 family 作廢
+    public void logout(String token, String refreshToken) {
+        long start = System.currentTimeMillis();
+        log.info("[SERVICE] logout start keyParams=token");
+        Claims claims;
+        try {
+            claims = jwtUtil.verify(token);
+        } catch (Exception e) {
+            log.error("[SERVICE] logout failed reason={}", e.getMessage());
+            throw new BizException(ErrorCode.UNAUTHORIZED);
+        }
+        boolean revoked = tokenRevocationService.revoke(claims);
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            refreshTokenService.revoke(refreshToken);
+        }
+        AuditContext.put("tokenRevoked", revoked);
+        long cost = System.currentTimeMillis() - start;
+        log.info("[SERVICE] logout success cost={}ms keyResult=user={},revoked={}", cost, claims.getSubject(), revoked);
+    }
+
+    private LoginResponse response(String token, String refreshToken) {
+        LoginResponse resp = new LoginResponse();
+        resp.setToken(token);
+        resp.setRefreshToken(refreshToken);
+        resp.setExpiresIn(jwtUtil.expirationMillis() / 1000);
+        return resp;
+    }
 }
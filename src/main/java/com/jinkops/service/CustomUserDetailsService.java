@@ -4,8 +4,10 @@ import com.jinkops.entity.user.Permission;
 import com.jinkops.entity.user.Role;
 import com.jinkops.entity.user.User;
 import com.jinkops.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -13,8 +15,9 @@ import org.springframework.stereotype.Service;
 import java.util.HashSet;
 import java.util.Set;
 
+@Slf4j
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
 
@@ -54,4 +57,19 @@ public class CustomUserDetailsService implements UserDetailsService {
                 authorities
         );
     }
+
+    @Override
+    // 登入成功且雜湊強度跟目前設定不同時，Security 會用明碼重算一份交給這裡存回 DB
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUsername(userDetails.getUsername());
+        if (user == null) {
+            return userDetails;
+        }
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        log.info("[AUTH] password rehashed username={}", user.getUsername());
+        return org.springframework.security.core.userdetails.User.withUserDetails(userDetails)
+                .password(newPassword)
+                .build();
+    }
 }
@@ -1,27 +1,36 @@
 package com.jinkops.service;
 
 import com.jinkops.audit.AuditContext;
+import com.jinkops.dto.log.LogSearchCursor;
 import com.jinkops.entity.log.OperationLogEntity;
+import com.jinkops.enums.LogSearchRoute;
+import com.jinkops.exception.BizException;
+import com.jinkops.exception.ErrorCode;
 import com.jinkops.mq.producer.EventLogService;
 import com.jinkops.repository.OperationLogRepository;
 import com.jinkops.service.es.OperationLogEsService;
+import com.jinkops.service.es.OperationLogIndexWatermark;
+import com.jinkops.vo.CursorPage;
+import com.jinkops.vo.LogPage;
 import com.jinkops.vo.LogQueryRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
 
 @Service
 @Slf4j
@@ -30,11 +39,28 @@ public class OperationLogService {
 
     private final OperationLogRepository operationLogRepository;
     private final OperationLogEsService operationLogEsService;
+    private final OperationLogIndexWatermark indexWatermark;
     private final EventLogService eventLogService;
 
     @Qualifier("mqTaskExecutor")
     private final Executor mqTaskExecutor;
 
+    // 用戶名精確查詢的前綴，例如 user:admin
+    private static final String USER_PREFIX = "user:";
+    private static final Pattern TRACE_ID_PATTERN = Pattern.compile("^[0-9a-fA-F]{32}$");
+    private static final Pattern IPV4_PATTERN =
+            Pattern.compile("^((25[0-5]|2[0-4]\\d|1?\\d?\\d)\\.){3}(25[0-5]|2[0-4]\\d|1?\\d?\\d)$");
+    // IPv6 的一組：1~4 個十六進位字
+    private static final Pattern IPV6_GROUPS = Pattern.compile("^[0-9a-fA-F]{1,4}(:[0-9a-fA-F]{1,4})*$");
+
+    // DB 兜底搜尋最多數到幾筆，超過就只回「至少這麼多」
+    @Value("${app.log.search.fallback-count-cap:10000}")
+    private int fallbackCountCap;
+
+    // 有沒有建好全文索引（db/operation_log_indexes.sql），沒建就不要走全文路徑
+    @Value("${app.log.search.fulltext-enabled:false}")
+    private boolean fullTextEnabled;
+
     public Page<OperationLogEntity> getLogs(Pageable pageable) {
         long start = System.currentTimeMillis();
         log.info("[SERVICE] getLogs start keyParams=page={},size={}",
@@ -76,7 +102,7 @@ public class OperationLogService {
             if (keyword == null || keyword.trim().isEmpty()) {
                 result = operationLogRepository.findAll(sorted);
             } else {
-                result = operationLogRepository.searchLogs(keyword, sorted);
+                result = searchDb(keyword.trim(), null, null, sorted.getPageNumber(), sorted.getPageSize());
             }
 
             markSource(result, "DB");
@@ -154,10 +180,11 @@ public class OperationLogService {
         }
     }
 
+    // 查詢參數、游標、水位線的毫秒都用系統時區轉，跟 create_time 寫入時的時區一致
     private LocalDateTime toLocalDateTime(Long epochMilli) {
         return epochMilli == null
                 ? null
-                : LocalDateTime.ofEpochSecond(epochMilli / 1000, 0, ZoneOffset.UTC);
+                : Instant.ofEpochMilli(epochMilli).atZone(ZoneId.systemDefault()).toLocalDateTime();
     }
 
     public Page<OperationLogEntity> searchEs(String keyword, Long startTime, Long endTime, int page, int size) {
@@ -166,21 +193,22 @@ public class OperationLogService {
                 keyword, startTime, endTime, page, size);
         boolean esAvailable = true;
         try {
+            // 查詢區間超過 ES 水位線時，水位線以上那段最新的資料由 DB 出，以下的照樣給 ES，兩邊合併成一頁。
+            Long watermark = indexWatermark.current();
+            Page<OperationLogEntity> tail = searchUnindexedTail(keyword, startTime, endTime, watermark, page, size);
+            if (tail != null && tail.getTotalElements() > 0) {
+                Page<OperationLogEntity> merged = mergeWithTail(keyword, startTime, watermark, tail, page, size);
+                AuditContext.put("logSearchSource", "ES+DB_TAIL");
+                AuditContext.put("logSearchFallback", "TAIL");
+                AuditContext.put("logSource", "ES+DB");
+                long cost = System.currentTimeMillis() - start;
+                log.info("[SERVICE] searchEs merge success cost={}ms keyResult=source=ES+DB,total={},tail={},watermark={}",
+                        cost, merged.getTotalElements(), tail.getTotalElements(), watermark);
+                return merged;
+            }
+
             Page<OperationLogEntity> esResult = operationLogEsService.search(keyword, startTime, endTime, page, size);
             if (esResult != null && !esResult.isEmpty()) {
-                // ES 活著但 MQ 掛過時，ES 可能是舊資料；這時回源 DB，並只補當頁缺失資料到 MQ。
-                Page<OperationLogEntity> dbCheck = searchFallbackPage(keyword, startTime, endTime, page, size);
-                if (shouldUseDbFallback(esResult, dbCheck)) {
-                    markStaleFallbackSource(dbCheck);
-                    AuditContext.put("logSearchSource", "ES_STALE");
-                    AuditContext.put("logSearchFallback", "DB");
-                    AuditContext.put("logSource", "ES->DB");
-                    long cost = System.currentTimeMillis() - start;
-                    log.info("[SERVICE] searchEs stale fallback success cost={}ms keyResult=source=DB,total={}",
-                            cost, dbCheck.getTotalElements());
-                    return dbCheck;
-                }
-
                 // ES 查得到且資料沒落後，就直接回 ES。
                 markSource(esResult, "ES");
                 AuditContext.put("logSearchSource", "ES");
@@ -214,62 +242,187 @@ public class OperationLogService {
         return fallback;
     }
 
-    private Page<OperationLogEntity> searchFallbackPage(String keyword, Long startTime, Long endTime, int page, int size) {
-        LocalDateTime start = toLocalDateTime(startTime);
-        LocalDateTime end = toLocalDateTime(endTime);
+    // 游標分頁版的 ES 搜尋，適合一路往下翻很多頁的場景
+    public CursorPage<OperationLogEntity> searchEsCursor(String keyword, Long startTime, Long endTime,
+                                                         int size, String cursor, boolean pit) {
+        long start = System.currentTimeMillis();
+        log.info("[SERVICE] searchEsCursor start keyParams=keyword={},start={},end={},size={},cursor={},pit={}",
+                keyword, startTime, endTime, size, cursor != null, pit);
+        LogSearchCursor position;
+        try {
+            position = cursor == null || cursor.isBlank() ? null : LogSearchCursor.decode(cursor);
+        } catch (Exception e) {
+            log.warn("[SERVICE] searchEsCursor invalid cursor reason={}", e.getMessage());
+            throw new BizException(ErrorCode.BAD_REQUEST, "cursor 格式錯誤");
+        }
+
+        try {
+            CursorPage<OperationLogEntity> result =
+                    operationLogEsService.searchAfter(keyword, startTime, endTime, size, position, pit);
+            result.getContent().forEach(log -> log.setQuerySource("ES"));
+            AuditContext.put("logSearchSource", "ES_CURSOR");
+            AuditContext.put("logSource", "ES");
+            long cost = System.currentTimeMillis() - start;
+            log.info("[SERVICE] searchEsCursor success cost={}ms keyResult=count={},hasMore={}",
+                    cost, result.getContent().size(), result.isHasMore());
+            return result;
+        } catch (Exception e) {
+            AuditContext.put("logSearchSource", "ES_ERROR");
+            log.error("[SERVICE] searchEsCursor failed on ES query reason={}", e.getMessage(), e);
+        }
 
-        List<OperationLogEntity> allResults = operationLogRepository.searchForEsFallback(keyword, start, end);
-        AuditContext.put("logSearchDbMatched", allResults.size());
+        // ES 不可用就用同一個游標走 DB keyset 查詢
+        CursorPage<OperationLogEntity> fallback = searchFallbackCursor(keyword, startTime, endTime, size, position);
+        fallback.getContent().forEach(log -> log.setQuerySource("ES->DB"));
+        AuditContext.put("logSearchFallback", "DB");
+        AuditContext.put("logSource", "ES->DB");
+        long cost = System.currentTimeMillis() - start;
+        log.info("[SERVICE] searchEsCursor fallback success cost={}ms keyResult=source=DB,count={},hasMore={}",
+                cost, fallback.getContent().size(), fallback.isHasMore());
+        return fallback;
+    }
 
-        int total = allResults.size();
-        int fromIndex = Math.min(page * size, total);
-        int toIndex = Math.min(fromIndex + size, total);
-        List<OperationLogEntity> pageContent = fromIndex < toIndex
-                ? allResults.subList(fromIndex, toIndex)
-                : List.of();
+    private Page<OperationLogEntity> searchFallbackPage(String keyword, Long startTime, Long endTime, int page, int size) {
+        String text = keyword == null || keyword.isBlank() ? null : keyword.trim();
+        return searchDb(text, toLocalDateTime(startTime), toLocalDateTime(endTime), page, size);
+    }
 
-        return new PageImpl<>(
-                pageContent,
+    // DB 關鍵字查詢入口：先看關鍵字長相挑一條有索引的路徑，實在沒有才退回 LIKE
+    private Page<OperationLogEntity> searchDb(String keyword, LocalDateTime start, LocalDateTime end, int page, int size) {
+        LogSearchPlan plan = planKeyword(keyword);
+        AuditContext.put("logSearchDbRoute", plan.route());
+        PageRequest limit = PageRequest.of(page, size);
+
+        Page<OperationLogEntity> result = switch (plan.route()) {
+            case TRACE_ID -> operationLogRepository.searchByTraceId(plan.value(), start, end, limit);
+            case IP -> operationLogRepository.searchByIp(plan.value(), start, end, limit);
+            case USERNAME -> operationLogRepository.searchByUsername(plan.value(), start, end, limit);
+            case URI_PREFIX -> operationLogRepository.searchByUriPrefix(plan.value(), start, end, limit);
+            case FULLTEXT -> searchFullTextPage(plan.value(), start, end, page, size);
+            case NONE, LIKE -> searchLikePage(plan.value(), start, end, page, size);
+        };
+
+        return new LogPage<>(
+                result.getContent(),
                 PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createTime")),
-                total
+                result.getTotalElements(),
+                LogPage.isExact(result)
         );
     }
 
-    private void markSource(Page<OperationLogEntity> page, String source) {
-        if (page == null || page.getContent() == null) {
-            return;
+    // 查詢計畫：看關鍵字長什麼樣子決定走哪個索引
+    LogSearchPlan planKeyword(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return new LogSearchPlan(LogSearchRoute.NONE, null);
         }
-        // 只是回傳給前端看的暫存欄位，不會落 DB。
-        page.getContent().forEach(log -> log.setQuerySource(source));
+        String text = keyword.trim();
+        if (text.regionMatches(true, 0, USER_PREFIX, 0, USER_PREFIX.length())) {
+            return new LogSearchPlan(LogSearchRoute.USERNAME, text.substring(USER_PREFIX.length()).trim());
+        }
+        if (TRACE_ID_PATTERN.matcher(text).matches()) {
+            // TraceInterceptor 產生的 traceId 都是小寫
+            return new LogSearchPlan(LogSearchRoute.TRACE_ID, text.toLowerCase());
+        }
+        if (IPV4_PATTERN.matcher(text).matches() || isIpv6(text)) {
+            return new LogSearchPlan(LogSearchRoute.IP, text);
+        }
+        if (text.startsWith("/")) {
+            return new LogSearchPlan(LogSearchRoute.URI_PREFIX, text);
+        }
+        // ngram 最少兩個字才切得出來
+        if (fullTextEnabled && toPhrase(text).length() >= 2) {
+            return new LogSearchPlan(LogSearchRoute.FULLTEXT, text);
+        }
+        return new LogSearchPlan(LogSearchRoute.LIKE, text);
     }
 
-    private void markStaleFallbackSource(Page<OperationLogEntity> dbPage) {
-        if (dbPage == null || dbPage.getContent() == null) {
-            return;
+    // 完整 8 組，或只有一個 :: 的縮寫（兩邊合計最多 7 組、至少 1 組），像 12:30:45 這種時間不算
+    static boolean isIpv6(String text) {
+        int gap = text.indexOf("::");
+        if (gap < 0) {
+            return IPV6_GROUPS.matcher(text).matches() && text.split(":").length == 8;
         }
+        if (text.indexOf("::", gap + 1) >= 0) {
+            return false;
+        }
+        String head = text.substring(0, gap);
+        String tail = text.substring(gap + 2);
+        int groups = countIpv6Groups(head) + countIpv6Groups(tail);
+        return groups >= 1 && groups <= 7
+                && (head.isEmpty() || IPV6_GROUPS.matcher(head).matches())
+                && (tail.isEmpty() || IPV6_GROUPS.matcher(tail).matches());
+    }
 
-        List<Long> ids = dbPage.getContent().stream()
-                .map(OperationLogEntity::getId)
-                .filter(id -> id != null)
-                .toList();
+    private static int countIpv6Groups(String part) {
+        return part.isEmpty() ? 0 : part.split(":", -1).length;
+    }
 
-        try {
-            Set<Long> existingIds = operationLogEsService.findExistingIds(ids);
-            List<OperationLogEntity> missingLogs = new ArrayList<>();
-            dbPage.getContent().forEach(log -> {
-                if (log.getId() != null && existingIds.contains(log.getId())) {
-                    log.setQuerySource("ES");
-                } else {
-                    log.setQuerySource("ES->DB");
-                    missingLogs.add(log);
-                }
-            });
-            sendMissingLogsToMq(missingLogs);
-        } catch (Exception e) {
-            log.warn("[SERVICE] check ES existing ids failed, mark fallback rows as ES->DB: {}", e.getMessage());
-            markSource(dbPage, "ES->DB");
-            sendMissingLogsToMq(dbPage.getContent());
+    // 舊的十欄位 LIKE：只撈當頁，筆數另外數而且有上限
+    private Page<OperationLogEntity> searchLikePage(String keyword, LocalDateTime start, LocalDateTime end, int page, int size) {
+        List<OperationLogEntity> pageContent = operationLogRepository.searchForEsFallback(
+                keyword, start, end, PageRequest.of(page, size));
+        long total = operationLogRepository.countForEsFallback(keyword, start, end, fallbackCountCap);
+        return cappedPage(pageContent, page, size, total);
+    }
+
+    // 數到上限就停的筆數只是下限，回傳時標成不精確，前端別把 totalPages 當成最後一頁
+    private Page<OperationLogEntity> cappedPage(List<OperationLogEntity> content, int page, int size, long total) {
+        boolean exact = total < fallbackCountCap;
+        AuditContext.put("logSearchDbMatched", exact ? total : total + "+");
+        return new LogPage<>(content, PageRequest.of(page, size), total, exact);
+    }
+
+    // 全文索引：只撈當頁，筆數一樣有上限
+    private Page<OperationLogEntity> searchFullTextPage(String text, LocalDateTime start, LocalDateTime end,
+                                                        int page, int size) {
+        // 包成片語，效果接近原本的「包含這段文字」
+        String phrase = "\"" + toPhrase(text) + "\"";
+        List<OperationLogEntity> pageContent = operationLogRepository.searchFullText(
+                phrase, start, end, PageRequest.of(page, size));
+        long total = operationLogRepository.countFullText(phrase, start, end, fallbackCountCap);
+        return cappedPage(pageContent, page, size, total);
+    }
+
+    // BOOLEAN MODE 片語裡不能再有雙引號
+    private static String toPhrase(String text) {
+        return text.replace("\"", " ").trim();
+    }
+
+    // 關鍵字查詢計畫：走哪條路徑 + 實際拿去查的值
+    record LogSearchPlan(LogSearchRoute route, String value) {
+    }
+
+    // 游標翻頁的 DB 兜底，接在游標後面查一頁
+    private CursorPage<OperationLogEntity> searchFallbackCursor(String keyword, Long startTime, Long endTime,
+                                                                int size, LogSearchCursor position) {
+        LocalDateTime start = toLocalDateTime(startTime);
+        LocalDateTime end = toLocalDateTime(endTime);
+        int pageSize = Math.max(size, 1);
+        // 多查一筆判斷還有沒有下一頁
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+
+        List<OperationLogEntity> rows = position == null
+                ? operationLogRepository.searchForEsFallback(keyword, start, end, limit)
+                : operationLogRepository.searchForEsFallbackAfter(keyword, start, end,
+                        toLocalDateTime(position.getCreateTime()), position.getId(), limit);
+
+        boolean hasMore = rows.size() > pageSize;
+        List<OperationLogEntity> content = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            OperationLogEntity last = content.get(content.size() - 1);
+            long lastTime = last.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            nextCursor = new LogSearchCursor(lastTime, last.getId(), null).encode();
         }
+        return new CursorPage<>(content, nextCursor, hasMore);
+    }
+
+    private void markSource(Page<OperationLogEntity> page, String source) {
+        if (page == null || page.getContent() == null) {
+            return;
+        }
+        // 只是回傳給前端看的暫存欄位，不會落 DB。
+        page.getContent().forEach(log -> log.setQuerySource(source));
     }
 
     private void sendMissingLogsToMq(List<OperationLogEntity> missingLogs) {
@@ -293,28 +446,76 @@ public class OperationLogService {
         }
     }
 
-    private boolean shouldUseDbFallback(Page<OperationLogEntity> esResult, Page<OperationLogEntity> dbResult) {
-        if (dbResult == null || dbResult.isEmpty()) {
-            return false;
+    // 水位線以上、查詢區間以內那段尾巴的當頁資料；只查這一小段，走 create_time 範圍。沒有尾巴回 null
+    private Page<OperationLogEntity> searchUnindexedTail(String keyword, Long startTime, Long endTime,
+                                                         Long watermark, int page, int size) {
+        if (watermark == null) {
+            // 還沒有水位線（剛部署或 Redis 讀不到）就先相信 ES，查不到時下面的 DB 兜底還會補
+            AuditContext.put("logSearchWatermark", "UNKNOWN");
+            return null;
         }
-        if (esResult == null || esResult.isEmpty()) {
-            return true;
+        AuditContext.put("logSearchWatermark", watermark);
+        if (endTime != null && endTime <= watermark) {
+            return null;
         }
-
-        List<Long> dbIds = dbResult.getContent().stream()
-                .map(OperationLogEntity::getId)
-                .filter(id -> id != null)
-                .toList();
+        long tailStart = startTime == null ? watermark + 1 : Math.max(startTime, watermark + 1);
+        String text = keyword == null || keyword.isBlank() ? null : keyword.trim();
         try {
-            Set<Long> existingIds = operationLogEsService.findExistingIds(dbIds);
-            boolean missingAny = dbIds.stream().anyMatch(id -> !existingIds.contains(id));
-            log.info("[SERVICE] searchEs stale check pageIds={}, existingInEs={}, missingAny={}",
-                    dbIds.size(), existingIds.size(), missingAny);
-            return missingAny;
+            Page<OperationLogEntity> tail = searchDb(text, toLocalDateTime(tailStart),
+                    toLocalDateTime(endTime), page, size);
+            AuditContext.put("logSearchTailMatched", tail.getTotalElements());
+            return tail;
         } catch (Exception e) {
-            log.warn("[SERVICE] check ES stale failed, keep ES result: {}", e.getMessage());
-            return false;
+            log.warn("[SERVICE] searchEs tail query failed, keep ES result: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 把 DB 尾巴跟 ES 結果合成一頁。
+     * 兩邊的時間區間不重疊，DB 那段整段都比 ES 新，所以整體排序就是「先尾巴、再 ES」：
+     * 這一頁先吃尾巴裡落在本頁的部分，不夠的再從 ES 往下接，ES 的起點要扣掉尾巴的筆數。
+     */
+    private Page<OperationLogEntity> mergeWithTail(String keyword, Long startTime, long watermark,
+                                                   Page<OperationLogEntity> tail, int page, int size) throws Exception {
+        long tailTotal = tail.getTotalElements();
+        boolean tailExact = LogPage.isExact(tail);
+        long offset = (long) page * size;
+        // 尾巴筆數數到上限只是下限；但這頁撈到半頁，尾巴就剛好在這頁結束，確切筆數算得出來
+        if (!tailExact && tail.getNumberOfElements() > 0 && tail.getNumberOfElements() < size) {
+            tailTotal = offset + tail.getNumberOfElements();
+            tailExact = true;
+        }
+        markSource(tail, "DB");
+
+        List<OperationLogEntity> esRows = List.of();
+        long esTotal = 0;
+        if (!tailExact) {
+            // 不知道尾巴確切有幾筆，ES 的起點算不出來；只回尾巴，總數標成下限，要往後翻請改用游標
+            AuditContext.put("logSearchTailCapped", true);
+        } else if (startTime == null || startTime <= watermark) {
+            // 起點已經在水位線之後就整段都是尾巴，不用問 ES
+            int esFrom = (int) Math.max(0, offset - tailTotal);
+            int esSize = size - tail.getNumberOfElements();
+            Page<OperationLogEntity> es = operationLogEsService.searchSlice(keyword, startTime, watermark, esFrom, esSize);
+            markSource(es, "ES");
+            esRows = es.getContent();
+            esTotal = es.getTotalElements();
         }
+
+        List<OperationLogEntity> merged = new ArrayList<>(tail.getNumberOfElements() + esRows.size());
+        merged.addAll(tail.getContent());
+        merged.addAll(esRows);
+        merged.sort(Comparator.comparing(OperationLogEntity::getCreateTime,
+                        Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(OperationLogEntity::getId, Comparator.nullsLast(Comparator.reverseOrder())));
+
+        return new LogPage<>(
+                merged,
+                PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createTime")),
+                tailTotal + esTotal,
+                tailExact
+        );
     }
 
 }
@@ -0,0 +1,219 @@
+package com.jinkops.service;
+
+import com.jinkops.cache.service.PermissionBits;
+import com.jinkops.entity.user.Permission;
+import com.jinkops.entity.user.Role;
+import com.jinkops.entity.user.User;
+import com.jinkops.repository.PermissionRepository;
+import com.jinkops.repository.RoleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 權限碼編號表：每個權限碼（含 ROLE_xxx 角色）對應一個連續的整數，用戶權限就能存成 long[] bitset，
+ * 檢查只剩幾個位元運算。
+ *
+ * 編號照 id 排（先權限、再角色），每台機器從同一份 DB 算出來的結果一樣。
+ * 編號表跟著權限快取的命名空間版本走：RBAC 一有變動版本號就 +1，下一次查的時候重新載入。
+ */
+@Slf4j
+@Service
+public class PermissionRegistry {
+
+    public static final String ADMIN_ROLE = "ROLE_ADMIN";
+
+    private final PermissionRepository permissionRepository;
+    private final RoleRepository roleRepository;
+
+    private volatile Snapshot current;
+
+    public PermissionRegistry(PermissionRepository permissionRepository, RoleRepository roleRepository) {
+        this.permissionRepository = permissionRepository;
+        this.roleRepository = roleRepository;
+    }
+
+    // 拿某個權限版本的編號表，版本變了才重新從 DB 載入
+    public Snapshot snapshot(long version) {
+        Snapshot snapshot = current;
+        if (snapshot != null && snapshot.version() == version) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = current;
+            if (snapshot != null && snapshot.version() == version) {
+                return snapshot;
+            }
+            snapshot = load(version);
+            current = snapshot;
+            return snapshot;
+        }
+    }
+
+    private Snapshot load(long version) {
+        long start = System.currentTimeMillis();
+        Set<String> codes = new LinkedHashSet<>();
+        permissionRepository.findAll().stream()
+                .sorted(Comparator.comparing(Permission::getId))
+                .map(p -> normalize(p.getCode()))
+                .filter(code -> !code.isEmpty())
+                .forEach(codes::add);
+        roleRepository.findAll().stream()
+                .sorted(Comparator.comparing(Role::getId))
+                .map(r -> "ROLE_" + normalize(r.getCode()))
+                .forEach(codes::add);
+        Snapshot snapshot = new Snapshot(version, new ArrayList<>(codes));
+        log.info("[RBAC] permission registry loaded version={} codes={} cost={}ms",
+                version, codes.size(), System.currentTimeMillis() - start);
+        return snapshot;
+    }
+
+    private static String normalize(String code) {
+        return code == null ? "" : code.trim().toUpperCase();
+    }
+
+    /**
+     * 某個版本的編號表，建好之後不會再變，可以放心在多執行緒之間共用。
+     */
+    public static final class Snapshot {
+
+        private final long version;
+        private final String[] codes;
+        private final Map<String, Integer> index;
+        private final long fingerprint;
+        private final int adminBit;
+
+        private Snapshot(long version, List<String> codes) {
+            this.version = version;
+            this.codes = codes.toArray(String[]::new);
+            this.index = new HashMap<>(codes.size() * 2);
+            long hash = 1125899906842597L;
+            for (int i = 0; i < this.codes.length; i++) {
+                index.put(this.codes[i], i);
+                for (int c = 0; c < this.codes[i].length(); c++) {
+                    hash = 31 * hash + this.codes[i].charAt(c);
+                }
+                hash = 31 * hash + '|';
+            }
+            this.fingerprint = hash;
+            this.adminBit = index.getOrDefault(ADMIN_ROLE, -1);
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public long fingerprint() {
+            return fingerprint;
+        }
+
+        // 權限碼轉 bitset；不認得的碼（DB 裡已經沒有）直接略過
+        public PermissionBits encode(Collection<String> granted) {
+            long[] words = new long[(codes.length + 63) >>> 6];
+            for (String code : granted) {
+                Integer bit = code == null ? null : index.get(normalize(code));
+                if (bit != null) {
+                    words[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return new PermissionBits(fingerprint, words);
+        }
+
+        // 從用戶的角色與角色下的權限算 bitset，跟登入時給 Security 的權限一致
+        public PermissionBits encode(User user) {
+            List<String> granted = new ArrayList<>();
+            for (Role role : user.getRoles()) {
+                granted.add("ROLE_" + normalize(role.getCode()));
+                for (Permission permission : role.getPermissions()) {
+                    granted.add(permission.getCode());
+                }
+            }
+            return encode(granted);
+        }
+
+        // bitset 轉回權限碼，給需要字串的地方（列表、日誌）
+        public Set<String> decode(PermissionBits bits) {
+            Set<String> result = new LinkedHashSet<>();
+            long[] words = bits.words();
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (bit < codes.length) {
+                        result.add(codes[bit]);
+                    }
+                    word &= word - 1;
+                }
+            }
+            return result;
+        }
+
+        // 這份 bitset 是不是用這張編號表算的
+        public boolean matches(PermissionBits bits) {
+            return bits != null && bits.fingerprint() == fingerprint;
+        }
+
+        public boolean isAdmin(PermissionBits bits) {
+            return adminBit >= 0 && test(bits.words(), adminBit);
+        }
+
+        // 把 @RequirePermission 的權限碼編成遮罩；不認得的碼記下來，AND 模式一定不過
+        public Requirement compile(String[] required) {
+            long[] mask = new long[(codes.length + 63) >>> 6];
+            boolean unknown = false;
+            for (String code : required) {
+                Integer bit = index.get(normalize(code));
+                if (bit == null) {
+                    unknown = true;
+                } else {
+                    mask[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return new Requirement(this, mask, unknown);
+        }
+
+        private static boolean test(long[] words, int bit) {
+            int w = bit >>> 6;
+            return w < words.length && (words[w] & (1L << bit)) != 0;
+        }
+    }
+
+    /**
+     * 編好的權限要求。snapshot 用來判斷編號表換版本後要不要重編。
+     */
+    public record Requirement(Snapshot snapshot, long[] mask, boolean hasUnknown) {
+
+        // AND：遮罩裡每一位都要有
+        public boolean allOf(long[] words) {
+            if (hasUnknown) {
+                return false;
+            }
+            for (int w = 0; w < mask.length; w++) {
+                long have = w < words.length ? words[w] : 0L;
+                if ((mask[w] & ~have) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // OR：遮罩裡有任一位就行
+        public boolean anyOf(long[] words) {
+            int n = Math.min(mask.length, words.length);
+            for (int w = 0; w < n; w++) {
+                if ((mask[w] & words[w]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.jinkops.service;
+
+import com.jinkops.audit.AuditContext;
+import com.jinkops.cache.service.PermissionBits;
+import com.jinkops.cache.service.PermissionCache;
+import com.jinkops.entity.user.User;
+import com.jinkops.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * 解析用戶目前的有效權限，JWT 過濾器和權限切面共用。
+ *
+ * 權限版本號和解析結果都掛在 request attribute 上，一個請求最多讀一次版本號、一次權限快取；
+ * 快取沒有才查 DB（同一個用戶同時只放一個請求查），之後同版本的請求都不會再碰 MySQL。
+ */
+@Slf4j
+@Service
+public class PermissionResolver {
+
+    private static final String VERSION_ATTRIBUTE = PermissionResolver.class.getName() + ".VERSION";
+    private static final String RESOLVED_ATTRIBUTE = PermissionResolver.class.getName() + ".RESOLVED";
+
+    private final PermissionCache permissionCache;
+    private final PermissionRegistry permissionRegistry;
+    private final UserRepository userRepository;
+
+    public PermissionResolver(PermissionCache permissionCache,
+                              PermissionRegistry permissionRegistry,
+                              UserRepository userRepository) {
+        this.permissionCache = permissionCache;
+        this.permissionRegistry = permissionRegistry;
+        this.userRepository = userRepository;
+    }
+
+    // 這個請求看到的權限版本；同一個請求裡固定，不會查到一半換版本
+    public long currentVersion() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        if (attrs != null && attrs.getAttribute(VERSION_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Long cached) {
+            return cached;
+        }
+        long version = permissionCache.version();
+        if (attrs != null) {
+            attrs.setAttribute(VERSION_ATTRIBUTE, version, RequestAttributes.SCOPE_REQUEST);
+        }
+        return version;
+    }
+
+    // 用戶目前的權限；用戶已經不存在（被刪了）回 null
+    public Resolved resolve(String username) {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        if (attrs != null
+                && attrs.getAttribute(RESOLVED_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Resolved cached
+                && cached.username().equals(username)) {
+            return cached;
+        }
+
+        long version = currentVersion();
+        PermissionRegistry.Snapshot snapshot = permissionRegistry.snapshot(version);
+
+        // 先走 Redis 權限快取
+        PermissionBits bits = permissionCache.get(version, username, snapshot.fingerprint());
+        AuditContext.put("permissionRedis", bits != null ? "HIT" : "MISS");
+
+        if (bits == null) {
+            // 快取被 RBAC 變更清掉後，同一個用戶的併發請求只讓一個回 DB，其他等它
+            bits = permissionCache.getOrLoad(version, username, snapshot.fingerprint(), () -> {
+                User user = userRepository.findWithRolesByUsername(username);
+                return user == null ? null : snapshot.encode(user);
+            });
+        }
+        if (bits == null) {
+            log.warn("[RBAC] resolve permissions failed username={} reason=user_not_found", username);
+            return null;
+        }
+
+        Resolved resolved = new Resolved(username, snapshot, bits, snapshot.isAdmin(bits));
+        if (attrs != null) {
+            attrs.setAttribute(RESOLVED_ATTRIBUTE, resolved, RequestAttributes.SCOPE_REQUEST);
+        }
+        return resolved;
+    }
+
+    /**
+     * 一個請求解析好的權限：用戶名（防止同一個請求裡換了身分）、編號表、bitset、是否超管。
+     */
+    public record Resolved(String username,
+                           PermissionRegistry.Snapshot snapshot,
+                           PermissionBits bits,
+                           boolean admin) {
+    }
+}
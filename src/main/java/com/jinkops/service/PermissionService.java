@@ -1,10 +1,13 @@
 package com.jinkops.service;
 
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.service.CacheService;
 import com.jinkops.cache.service.PermissionCache;
 import com.jinkops.entity.user.Permission;
 import com.jinkops.exception.BizException;
 import com.jinkops.exception.ErrorCode;
 import com.jinkops.repository.PermissionRepository;
+import com.jinkops.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,6 +22,7 @@ public class PermissionService {
 
     private final PermissionRepository permissionRepository;
     private final PermissionCache permissionCache;
+    private final CacheService cacheService;
 
     // 權限管理列表
     public List<Permission> list() {
@@ -44,7 +48,7 @@ public class PermissionService {
             Permission permission = new Permission();
             permission.setCode(code);
             Permission saved = permissionRepository.save(permission);
-            permissionCache.deleteAll();
+            AfterCommit.run(permissionCache::deleteAll);
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] createPermission success cost={}ms keyResult=permissionId={}", cost, saved.getId());
             return saved;
@@ -63,7 +67,11 @@ public class PermissionService {
             Permission permission = permissionRepository.findById(id)
                     .orElseThrow(() -> new BizException(ErrorCode.PERMISSION_NOT_FOUND));
             permissionRepository.delete(permission);
-            permissionCache.deleteAll();
+            AfterCommit.run(() -> {
+                permissionCache.deleteAll();
+                // 用戶分頁快取帶著角色與權限，一起清
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] deletePermission success cost={}ms keyResult=ok", cost);
         } catch (Exception e) {
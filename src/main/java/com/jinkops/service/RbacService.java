@@ -1,5 +1,9 @@
 package com.jinkops.service;
 
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.key.UserKeys;
+import com.jinkops.cache.service.CacheService;
+import com.jinkops.cache.service.NearCache;
 import com.jinkops.cache.service.PermissionCache;
 import com.jinkops.entity.user.Permission;
 import com.jinkops.entity.user.Role;
@@ -9,6 +13,7 @@ import com.jinkops.exception.ErrorCode;
 import com.jinkops.repository.PermissionRepository;
 import com.jinkops.repository.RoleRepository;
 import com.jinkops.repository.UserRepository;
+import com.jinkops.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -27,6 +32,8 @@ public class RbacService {
     private final RoleRepository roleRepository;
     private final PermissionRepository permissionRepository;
     private final PermissionCache permissionCache;
+    private final CacheService cacheService;
+    private final NearCache nearCache;
 
     // 綁定用戶與角色，這裡只管關聯，不做其他業務
     @Transactional
@@ -46,7 +53,15 @@ public class RbacService {
 
             user.setRoles(new HashSet<>(roles));
             userRepository.save(user);
-            permissionCache.delete(user.getUsername());
+            // 提交後才清，提交前進來的請求才不會把舊角色的權限寫回快取
+            String username = user.getUsername();
+            AfterCommit.run(() -> {
+                permissionCache.delete(username);
+                // 快取裡的用戶資訊帶著角色，換角色後要一起失效（含其他台的本機快取）
+                nearCache.evict(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(username));
+                // 用戶分頁快取帶著角色與權限，一起清
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] assignUserRoles success cost={}ms keyResult=ok", cost);
         } catch (Exception e) {
@@ -73,7 +88,12 @@ public class RbacService {
 
             role.setPermissions(new HashSet<>(perms));
             roleRepository.save(role);
-            permissionCache.deleteAll();
+            // 提交後才換權限版本，新版本的編號表不會從還沒提交的資料建出來
+            AfterCommit.run(() -> {
+                permissionCache.deleteAll();
+                // 用戶分頁快取帶著角色與權限，一起清
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] assignRolePermissions success cost={}ms keyResult=ok", cost);
         } catch (Exception e) {
@@ -0,0 +1,209 @@
+package com.jinkops.service;
+
+import com.jinkops.exception.BizException;
+import com.jinkops.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * refresh token：存在 Redis、每用一次就換一張新的（rotation）。
+ *
+ * 一次登入是一個 family（jinkops:auth:refresh:{familyId}），裡面記著用戶名、角色碼、權限版本，
+ * 以及目前唯一有效那張 refresh token 的摘要。換發時比對摘要，對得上才換新的並延長閒置期限（sliding），
+ * 但不超過登入時定下的絕對期限。拿舊的（已經換過的）來用就是被偷用，整個 family 直接作廢。
+ * Redis 只存摘要，不存原始 token。
+ * 每個用戶另有一份 family 索引（jinkops:auth:refresh-user:{username}），改密碼、刪用戶時整批作廢。
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    private static final String FAMILY_PREFIX = "jinkops:auth:refresh:";
+    // 用戶名 -> 他名下的 familyId（score 是絕對期限），過期的在下次登入時順手清掉
+    private static final String USER_INDEX_PREFIX = "jinkops:auth:refresh-user:";
+
+    private static final String FIELD_USERNAME = "username";
+    private static final String FIELD_ROLES = "roles";
+    private static final String FIELD_VERSION = "pv";
+
+    private static final long ROTATED = 1;
+    private static final long REUSED = -1;
+
+    // 寫 family、設 TTL、登記到用戶索引一次做完，不會留下沒有 TTL 的 key
+    private static final DefaultRedisScript<Long> ISSUE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HSET', KEYS[1], 'username', ARGV[1], 'roles', ARGV[2], 'pv', ARGV[3], "
+                    + "'current', ARGV[4], 'expiresAt', ARGV[5]) "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[6]) "
+                    + "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[7]) "
+                    + "redis.call('ZADD', KEYS[2], ARGV[5], ARGV[8]) "
+                    + "redis.call('PEXPIREAT', KEYS[2], ARGV[5]) "
+                    + "return 1",
+            Long.class);
+
+    // 用戶名下的 family 全部刪掉，連索引一起；跟登入併發也不會漏掉剛開的那個
+    private static final DefaultRedisScript<Long> REVOKE_USER_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGE', KEYS[1], 0, -1) "
+                    + "for _, id in ipairs(ids) do redis.call('DEL', ARGV[1] .. id) end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "return #ids",
+            Long.class);
+
+    // family 還在才改，剛被撤銷的不會被寫回一個沒有 TTL 的殼
+    private static final DefaultRedisScript<Long> UPDATE_AUTHORITIES_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end "
+                    + "redis.call('HSET', KEYS[1], 'roles', ARGV[1], 'pv', ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    // 比對摘要、換成新的、延長期限一次做完；同一張 token 併發換發只會有一個成功
+    private static final DefaultRedisScript<Long> ROTATE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('HGET', KEYS[1], 'current') "
+                    + "if not current then return 0 end "
+                    + "if current ~= ARGV[1] then redis.call('DEL', KEYS[1]) return -1 end "
+                    + "local remaining = tonumber(redis.call('HGET', KEYS[1], 'expiresAt')) - tonumber(ARGV[4]) "
+                    + "if remaining <= 0 then redis.call('DEL', KEYS[1]) return 0 end "
+                    + "redis.call('HSET', KEYS[1], 'current', ARGV[2]) "
+                    + "redis.call('PEXPIRE', KEYS[1], math.min(tonumber(ARGV[3]), remaining)) "
+                    + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redis;
+    private final SecureRandom random = new SecureRandom();
+
+    // 多久沒換發就失效（每次換發重新計算）
+    @Value("${app.security.jwt.refresh.idle-ttl-hours:168}")
+    private long idleTtlHours;
+
+    // 從登入起算最長能續多久，到了一定要重新登入
+    @Value("${app.security.jwt.refresh.max-lifetime-hours:720}")
+    private long maxLifetimeHours;
+
+    public RefreshTokenService(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * 登入時開一個新的 family，回傳第一張 refresh token。
+     */
+    public String issue(String username, Collection<String> roles, long permissionVersion) {
+        String familyId = randomToken(16);
+        String token = familyId + "." + randomToken(32);
+        long now = System.currentTimeMillis();
+        long idleTtl = TimeUnit.HOURS.toMillis(idleTtlHours);
+        long expiresAt = now + TimeUnit.HOURS.toMillis(maxLifetimeHours);
+
+        redis.execute(ISSUE_SCRIPT, List.of(FAMILY_PREFIX + familyId, USER_INDEX_PREFIX + username),
+                username,
+                String.join(",", roles),
+                String.valueOf(permissionVersion),
+                digest(token),
+                String.valueOf(expiresAt),
+                String.valueOf(Math.min(idleTtl, expiresAt - now)),
+                String.valueOf(now),
+                familyId);
+        return token;
+    }
+
+    /**
+     * 換發：舊 token 作廢、回傳新 token 和登入時記下的身分資訊。
+     * 不存在、過期、或偵測到重用一律 UNAUTHORIZED。
+     */
+    public Session rotate(String refreshToken) {
+        String familyId = familyId(refreshToken);
+        String key = FAMILY_PREFIX + familyId;
+        String next = familyId + "." + randomToken(32);
+        Long result = redis.execute(ROTATE_SCRIPT, List.of(key),
+                digest(refreshToken), digest(next),
+                String.valueOf(TimeUnit.HOURS.toMillis(idleTtlHours)),
+                String.valueOf(System.currentTimeMillis()));
+        if (result != null && result == REUSED) {
+            log.warn("[AUTH] refresh token reuse detected, family revoked familyId={}", familyId);
+            throw new BizException(ErrorCode.UNAUTHORIZED, "Refresh token 已失效");
+        }
+        if (result == null || result != ROTATED) {
+            throw new BizException(ErrorCode.UNAUTHORIZED, "Refresh token 已失效");
+        }
+
+        List<Object> values = redis.opsForHash().multiGet(key, List.of(FIELD_USERNAME, FIELD_ROLES, FIELD_VERSION));
+        if (values.get(0) == null) {
+            // 剛換完就被登出 / 過期
+            throw new BizException(ErrorCode.UNAUTHORIZED, "Refresh token 已失效");
+        }
+        String roles = values.get(1) == null ? "" : String.valueOf(values.get(1));
+        return new Session(
+                familyId,
+                String.valueOf(values.get(0)),
+                roles.isEmpty() ? List.of() : Arrays.asList(roles.split(",")),
+                values.get(2) == null ? -1 : Long.parseLong(String.valueOf(values.get(2))),
+                next);
+    }
+
+    // 權限版本變了，重新解析過角色碼後記回 family，下次換發就不用再解析
+    public void updateAuthorities(String familyId, Collection<String> roles, long permissionVersion) {
+        redis.execute(UPDATE_AUTHORITIES_SCRIPT, List.of(FAMILY_PREFIX + familyId),
+                String.join(",", roles), String.valueOf(permissionVersion));
+    }
+
+    // 登出或用戶不存在：整個 family 作廢
+    public void revoke(String refreshToken) {
+        revokeFamily(familyId(refreshToken));
+    }
+
+    public void revokeFamily(String familyId) {
+        redis.delete(FAMILY_PREFIX + familyId);
+    }
+
+    // 改密碼、刪用戶：這個用戶所有登入的 refresh token 一起作廢，偷到的也換不到新的 access token
+    public long revokeUser(String username) {
+        Long revoked = redis.execute(REVOKE_USER_SCRIPT, List.of(USER_INDEX_PREFIX + username), FAMILY_PREFIX);
+        long count = revoked == null ? 0 : revoked;
+        log.info("[AUTH] refresh families revoked user={} count={}", username, count);
+        return count;
+    }
+
+    private String familyId(String refreshToken) {
+        int split = refreshToken == null ? -1 : refreshToken.indexOf('.');
+        if (split <= 0) {
+            throw new BizException(ErrorCode.UNAUTHORIZED, "Refresh token 格式錯誤");
+        }
+        return refreshToken.substring(0, split);
+    }
+
+    private String randomToken(int bytes) {
+        byte[] buf = new byte[bytes];
+        random.nextBytes(buf);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 換發後的結果：family、用戶名、登入時的角色碼與權限版本、新的 refresh token。
+     */
+    public record Session(String familyId,
+                          String username,
+                          List<String> roles,
+                          long permissionVersion,
+                          String refreshToken) {
+    }
+}
@@ -1,10 +1,13 @@
 package com.jinkops.service;
 
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.service.CacheService;
 import com.jinkops.cache.service.PermissionCache;
 import com.jinkops.entity.user.Role;
 import com.jinkops.exception.BizException;
 import com.jinkops.exception.ErrorCode;
 import com.jinkops.repository.RoleRepository;
+import com.jinkops.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,6 +22,7 @@ public class RoleService {
 
     private final RoleRepository roleRepository;
     private final PermissionCache permissionCache;
+    private final CacheService cacheService;
 
     // 角色管理列表
     public List<Role> list() {
@@ -44,7 +48,7 @@ public class RoleService {
             Role role = new Role();
             role.setCode(code);
             Role saved = roleRepository.save(role);
-            permissionCache.deleteAll();
+            AfterCommit.run(permissionCache::deleteAll);
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] createRole success cost={}ms keyResult=roleId={}", cost, saved.getId());
             return saved;
@@ -64,7 +68,11 @@ public class RoleService {
                     .orElseThrow(() -> new BizException(ErrorCode.ROLE_NOT_FOUND));
             role.setCode(code);
             Role saved = roleRepository.save(role);
-            permissionCache.deleteAll();
+            AfterCommit.run(() -> {
+                permissionCache.deleteAll();
+                // 用戶分頁快取帶著角色與權限，一起清
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] updateRole success cost={}ms keyResult=roleId={}", cost, saved.getId());
             return saved;
@@ -83,7 +91,11 @@ public class RoleService {
             Role role = roleRepository.findById(id)
                     .orElseThrow(() -> new BizException(ErrorCode.ROLE_NOT_FOUND));
             roleRepository.delete(role);
-            permissionCache.deleteAll();
+            AfterCommit.run(() -> {
+                permissionCache.deleteAll();
+                // 用戶分頁快取帶著角色與權限，一起清
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] deleteRole success cost={}ms keyResult=ok", cost);
         } catch (Exception e) {
@@ -0,0 +1,197 @@
+package com.jinkops.service;
+
+import com.jinkops.util.BloomFilter;
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * token 撤銷清單。
+ *
+ * 撤銷時把 jti 寫進 Redis（TTL = token 剩餘壽命），同時記進一個依過期時間排序的索引，再廣播給所有節點。
+ * 每台本機都有一份撤銷 jti 的 Bloom filter：沒撤銷的 token（絕大多數）查本機就放行，不碰 Redis；
+ * filter 說「可能有」才去 Redis 確認，擋掉誤判。
+ * pub/sub 不保證送達，filter 也刪不掉過期的 jti，所以定時從索引整個重建一份換上去。
+ * 刪除用戶時改撤銷整個用戶：記下刪除時間，在那之前簽發的 token 一律擋掉，標記活到最後一張 token 過期，
+ * 走同一份 filter / 索引 / 廣播，不用動全域的權限版本。
+ */
+@Slf4j
+@Service
+public class TokenRevocationService implements MessageListener {
+
+    public static final String REVOKE_CHANNEL = "jinkops:jwt:revoke";
+    private static final String REVOKED_PREFIX = "jinkops:jwt:revoked:";
+    // jti -> exp（毫秒），重建 filter 用
+    private static final String REVOKED_INDEX = "jinkops:jwt:revoked";
+    // 整個用戶撤銷的 filter 成員前綴；jti 是 base36 數字，不會撞到
+    private static final String USER_MEMBER_PREFIX = "user:";
+
+    // 寫撤銷標記、進索引、廣播一次做完，不會只做一半
+    private static final DefaultRedisScript<Long> REVOKE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[1], ARGV[5], 'PX', ARGV[2]) "
+                    + "redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1]) "
+                    + "redis.call('PUBLISH', ARGV[4], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redis;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    // access token 的壽命：撤銷整個用戶的標記要留這麼久
+    @Value("${app.security.jwt.expiration:86400000}")
+    private long tokenTtlMillis;
+
+    // 預估同時有效的撤銷筆數與可接受的誤判率，決定 filter 大小
+    @Value("${app.security.jwt.revocation.expected-size:100000}")
+    private long expectedSize;
+
+    @Value("${app.security.jwt.revocation.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+    // 重建期間收到的廣播也要記進新的那份，換上去才不會漏
+    private volatile BloomFilter building;
+
+    public TokenRevocationService(StringRedisTemplate redis,
+                                  RedisMessageListenerContainer listenerContainer) {
+        this.redis = redis;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void init() {
+        filter = new BloomFilter(expectedSize, falsePositiveRate);
+        listenerContainer.addMessageListener(this, new ChannelTopic(REVOKE_CHANNEL));
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // Redis 還沒起來就先用空的，等定時任務補
+            log.warn("[AUTH] revocation filter initial load failed reason={}", e.getMessage());
+        }
+    }
+
+    /**
+     * 撤銷一張 token；沒有 jti 的舊 token 撤不了，已經過期的不用撤。
+     */
+    public boolean revoke(Claims claims) {
+        String jti = claims.getId();
+        Date exp = claims.getExpiration();
+        if (jti == null || exp == null) {
+            return false;
+        }
+        long ttl = exp.getTime() - System.currentTimeMillis();
+        if (ttl <= 0) {
+            return false;
+        }
+        redis.execute(REVOKE_SCRIPT, List.of(REVOKED_PREFIX + jti, REVOKED_INDEX),
+                jti, String.valueOf(ttl), String.valueOf(exp.getTime()), REVOKE_CHANNEL, "1");
+        // 自己這台不等廣播繞一圈回來
+        add(jti);
+        log.info("[AUTH] token revoked jti={} remainingMs={}", jti, ttl);
+        return true;
+    }
+
+    /**
+     * 撤銷一個用戶在現在以前簽發的所有 token（刪除用戶用）。
+     * 之後同名重建的帳號重新登入拿到的 token 不受影響。
+     */
+    public void revokeUser(String username) {
+        String member = USER_MEMBER_PREFIX + username;
+        long now = System.currentTimeMillis();
+        redis.execute(REVOKE_SCRIPT, List.of(REVOKED_PREFIX + member, REVOKED_INDEX),
+                member, String.valueOf(tokenTtlMillis), String.valueOf(now + tokenTtlMillis), REVOKE_CHANNEL,
+                String.valueOf(now));
+        add(member);
+        log.info("[AUTH] user tokens revoked user={} ttlMs={}", username, tokenTtlMillis);
+    }
+
+    /**
+     * 過濾器用：本機 filter 說沒有就直接放行；說可能有才查 Redis。
+     * Redis 查不到（連線失敗）時寧可擋下。
+     */
+    public boolean isRevoked(Claims claims) {
+        return isJtiRevoked(claims.getId()) || isUserRevoked(claims.getSubject(), claims.getIssuedAt());
+    }
+
+    private boolean isJtiRevoked(String jti) {
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(redis.hasKey(REVOKED_PREFIX + jti));
+        } catch (Exception e) {
+            log.warn("[AUTH] revocation check failed jti={} reason={}", jti, e.getMessage());
+            return true;
+        }
+    }
+
+    // 用戶被整個撤銷過，且這張 token 是在撤銷前簽的
+    private boolean isUserRevoked(String username, Date issuedAt) {
+        String member = username == null ? null : USER_MEMBER_PREFIX + username;
+        if (member == null || !filter.mightContain(member)) {
+            return false;
+        }
+        try {
+            String revokedAt = redis.opsForValue().get(REVOKED_PREFIX + member);
+            return revokedAt != null && (issuedAt == null || issuedAt.getTime() <= Long.parseLong(revokedAt));
+        } catch (Exception e) {
+            log.warn("[AUTH] revocation check failed user={} reason={}", username, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 從索引重建 filter：先清掉已經過期的，剩下的放進新 filter 再整個換上去。
+     */
+    public int rebuild() {
+        BloomFilter next = new BloomFilter(expectedSize, falsePositiveRate);
+        building = next;
+        try {
+            long now = System.currentTimeMillis();
+            redis.opsForZSet().removeRangeByScore(REVOKED_INDEX, 0, now);
+            Set<String> revoked = redis.opsForZSet().rangeByScore(REVOKED_INDEX, now, Double.MAX_VALUE);
+            int count = 0;
+            if (revoked != null) {
+                for (String jti : revoked) {
+                    next.put(jti);
+                    count++;
+                }
+            }
+            filter = next;
+            return count;
+        } finally {
+            building = null;
+        }
+    }
+
+    // 收到其他台（也包含自己）的撤銷廣播
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String jti = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!jti.isEmpty()) {
+            add(jti);
+            log.debug("[AUTH] revocation received jti={}", jti);
+        }
+    }
+
+    private void add(String jti) {
+        filter.put(jti);
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(jti);
+        }
+    }
+}
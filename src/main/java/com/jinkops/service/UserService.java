@@ -1,16 +1,23 @@
 package com.jinkops.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jinkops.audit.AuditContext;
+import com.jinkops.cache.key.CacheKey;
+import com.jinkops.cache.key.CacheTags;
 import com.jinkops.cache.key.UserKeys;
+import com.jinkops.cache.service.CacheEntry;
+import com.jinkops.cache.service.CacheRefresher;
 import com.jinkops.cache.service.CacheService;
+import com.jinkops.cache.service.NearCache;
+import com.jinkops.cache.service.PermissionBits;
 import com.jinkops.cache.service.PermissionCache;
+import com.jinkops.cache.service.SingleFlight;
 import com.jinkops.entity.user.Role;
 import com.jinkops.entity.user.User;
 import com.jinkops.exception.BizException;
 import com.jinkops.exception.ErrorCode;
 import com.jinkops.repository.RoleRepository;
 import com.jinkops.repository.UserRepository;
+import com.jinkops.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
@@ -22,7 +29,12 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -34,11 +46,16 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final CacheService cacheService;
-    private final ObjectMapper objectMapper;
+    private final NearCache nearCache;
+    private final SingleFlight singleFlight;
+    private final CacheRefresher cacheRefresher;
     private final PasswordEncoder passwordEncoder;
     private final RedissonClient redissonClient;
     private final PermissionCache permissionCache;
+    private final PermissionRegistry permissionRegistry;
     private final RoleRepository roleRepository;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
 
     // 隨機 TTL，避免大量快取同時過期
     private int randomTtl() {
@@ -67,46 +84,37 @@ public class UserService {
         log.info("[SERVICE] findByUsername start keyParams=username={}", username);
         try {
             String key = UserKeys.userInfo(username);
-            String json = cacheService.get(key);
-            if ("null".equals(json)) {
-                // 命中空值快取，代表 Redis 幫我們擋掉一次 DB 查詢。
-                AuditContext.put("userRedis", "HIT_NULL");
-                // 空值快取命中，直接回
-                long cost = System.currentTimeMillis() - start;
-                log.info("[SERVICE] findByUsername success cost={}ms keyResult=not_found", cost);
-                return null;
-            }
-
-            if (json != null) {
-                try {
-                    // 命中使用者快取，這次不用查 DB。
-                    AuditContext.put("userRedis", "HIT");
-                    // 快取命中直接反序列化
-                    User cached = objectMapper.readValue(json, User.class);
+            // 快過期時照樣回快取裡的值，背景提前重建
+            NearCache.Lookup<User> cached = nearCache.get(UserKeys.USER_INFO_CACHE, key, User.class,
+                    () -> reloadUser(username, key));
+            if (cached.hit()) {
+                // L1 命中連 Redis 都不用碰；L2 命中是從 Redis 讀回來的。
+                String level = NearCache.Lookup.L1.equals(cached.source()) ? "_L1" : "";
+                if (cached.value() == null) {
+                    // 命中空值快取，代表快取幫我們擋掉一次 DB 查詢。
+                    AuditContext.put("userRedis", "HIT_NULL" + level);
                     long cost = System.currentTimeMillis() - start;
-                    log.info("[SERVICE] findByUsername success cost={}ms keyResult=from_cache", cost);
-                    return cached;
-                } catch (Exception ignored) {
+                    log.info("[SERVICE] findByUsername success cost={}ms keyResult=not_found", cost);
+                    return null;
                 }
+                // 命中使用者快取，這次不用查 DB。
+                AuditContext.put("userRedis", "HIT" + level);
+                long cost = System.currentTimeMillis() - start;
+                log.info("[SERVICE] findByUsername success cost={}ms keyResult=from_cache", cost);
+                return cached.value();
             }
 
             // 快取沒有就回 DB
             // 沒命中 Redis，下面就會走 DB，這個標記會被操作日誌帶出去。
             AuditContext.put("userRedis", "MISS");
-            User user = userRepository.findByUsername(username);
+            // 同一個 key 同時只放一個請求回源，其他人等它的結果
+            User user = singleFlight.load(key, () -> loadUser(username, key));
             if (user == null) {
-                // 空值快取防穿透
-                cacheService.set(key, "null", 30);
                 long cost = System.currentTimeMillis() - start;
                 log.info("[SERVICE] findByUsername success cost={}ms keyResult=not_found", cost);
                 return null;
             }
 
-            try {
-                // 有結果就補快取
-                cacheService.set(key, objectMapper.writeValueAsString(user), randomTtl());
-            } catch (Exception ignored) {
-            }
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] findByUsername success cost={}ms keyResult=found", cost);
             return user;
@@ -116,6 +124,83 @@ public class UserService {
         }
     }
 
+    // 回源：先重讀一次快取（可能剛被別人填好），沒有才查 DB 並回填
+    private User loadUser(String username, String key) {
+        NearCache.Lookup<User> cached = nearCache.get(UserKeys.USER_INFO_CACHE, key, User.class);
+        if (cached.hit()) {
+            return cached.value();
+        }
+        return reloadUser(username, key);
+    }
+
+    // 查 DB 回填快取，順便記下花了多久（提前刷新用）
+    private User reloadUser(String username, String key) {
+        long start = System.currentTimeMillis();
+        User user = userRepository.findByUsername(username);
+        if (user == null) {
+            // 查不到也寫，空值快取防穿透
+            nearCache.put(UserKeys.USER_INFO_CACHE, key, null, 30);
+            return null;
+        }
+        // 查得太快會算出 0，0 代表不提前刷新，所以至少記 1ms
+        nearCache.put(UserKeys.USER_INFO_CACHE, key, user, randomTtl(), Math.max(System.currentTimeMillis() - start, 1));
+        return user;
+    }
+
+    // 批次查用戶：L1 → 一次 MGET 查 Redis → 剩下的一次 IN 查 DB 並用 pipeline 回填；回傳照傳入順序，查不到的不放
+    public Map<String, User> findByUsernames(Collection<String> usernames) {
+        long start = System.currentTimeMillis();
+        log.info("[SERVICE] findByUsernames start keyParams=count={}", usernames.size());
+        try {
+            Map<String, String> keys = new LinkedHashMap<>();
+            for (String username : usernames) {
+                keys.put(username, UserKeys.userInfo(username));
+            }
+            Map<String, NearCache.Lookup<User>> cached =
+                    nearCache.getAll(UserKeys.USER_INFO_CACHE, keys.values(), User.class);
+
+            List<String> missing = new ArrayList<>();
+            for (Map.Entry<String, String> entry : keys.entrySet()) {
+                if (!cached.containsKey(entry.getValue())) {
+                    missing.add(entry.getKey());
+                }
+            }
+
+            Map<String, User> loaded = new HashMap<>();
+            if (!missing.isEmpty()) {
+                for (User user : userRepository.findByUsernameIn(missing)) {
+                    loaded.put(user.getUsername(), user);
+                }
+                Map<String, User> refill = new HashMap<>();
+                for (String username : missing) {
+                    // 查不到的也寫，空值快取防穿透
+                    refill.put(UserKeys.userInfo(username), loaded.get(username));
+                }
+                nearCache.putAll(UserKeys.USER_INFO_CACHE, refill,
+                        key -> refill.get(key) == null ? 30 : randomTtl());
+            }
+            // 批次查詢命中多少、回源多少，一起帶進操作日誌
+            AuditContext.put("userBatchRedis", "HIT=" + cached.size() + ",MISS=" + missing.size());
+
+            Map<String, User> result = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : keys.entrySet()) {
+                NearCache.Lookup<User> lookup = cached.get(entry.getValue());
+                User user = lookup != null ? lookup.value() : loaded.get(entry.getKey());
+                if (user != null) {
+                    result.put(entry.getKey(), user);
+                }
+            }
+
+            long cost = System.currentTimeMillis() - start;
+            log.info("[SERVICE] findByUsernames success cost={}ms keyResult=found={},db={}",
+                    cost, result.size(), missing.size());
+            return result;
+        } catch (Exception e) {
+            log.error("[SERVICE] findByUsernames failed reason={}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
     // 新增用戶時做密碼加密
     @Transactional
     public User addUser(User user) {
@@ -128,6 +213,11 @@ public class UserService {
                 user.setRoles(Set.of(defaultRole));
             }
             User saved = userRepository.save(user);
+            // 之前查過不存在的話會有空值快取，建好就清掉；列表也多了一個人
+            AfterCommit.run(() -> {
+                nearCache.evict(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(saved.getUsername()));
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] addUser success cost={}ms keyResult=userId={}", cost, saved.getId());
             return saved;
@@ -148,9 +238,16 @@ public class UserService {
                 // 找不到就直接丟業務錯
                 throw new BizException(ErrorCode.USER_NOT_FOUND, "用戶不存在：" + username);
             }
-            cacheService.deleteByPrefix("user:list:page:");
             userRepository.delete(user);
-            permissionCache.delete(username);
+            // 撤銷失敗就整筆回滾，不會留下刪了用戶卻還能續簽的 refresh token
+            refreshTokenService.revokeUser(username);
+            // 手上還沒過期的 access token 也擋掉；只撤這個用戶，不動全域權限版本，其他人的快取和 token 照用
+            tokenRevocationService.revokeUser(username);
+            AfterCommit.run(() -> {
+                cacheService.invalidateTag(CacheTags.USERS);
+                nearCache.evict(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(username));
+                permissionCache.delete(username);
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] deleteUser success cost={}ms keyResult=ok", cost);
         } catch (Exception e) {
@@ -159,6 +256,24 @@ public class UserService {
         }
     }
 
+    // 批次查多個用戶的權限碼：權限快取一次 MGET，沒命中的一次 IN 查 DB；格式跟登入時給 Security 的一樣
+    public Map<String, Set<String>> permissionsOf(Collection<String> usernames) {
+        long version = permissionCache.version();
+        PermissionRegistry.Snapshot snapshot = permissionRegistry.snapshot(version);
+        Map<String, PermissionBits> bits = permissionCache.getOrLoadAll(version, snapshot.fingerprint(), usernames,
+                missing -> {
+                    Map<String, PermissionBits> loaded = new HashMap<>();
+                    for (User user : userRepository.findByUsernameIn(missing)) {
+                        loaded.put(user.getUsername(), snapshot.encode(user));
+                    }
+                    return loaded;
+                });
+
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        bits.forEach((username, value) -> result.put(username, snapshot.decode(value)));
+        return result;
+    }
+
     // 內部方法，給授權/關聯關係查詢用
     public Optional<User> getById(Long id) {
         long start = System.currentTimeMillis();
@@ -176,29 +291,12 @@ public class UserService {
 
     // 只讀快取，不做 DB 回查
     public User getUserFromCache(String username) {
-        String key = UserKeys.userInfo(username);
-        String json = cacheService.get(key);
-        if (json == null) {
-            return null;
-        }
-        if ("null".equals(json)) {
-            return null; // 空值快取
-        }
-        try {
-            return objectMapper.readValue(json, User.class);
-        } catch (Exception e) {
-            return null;
-        }
+        return nearCache.get(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(username), User.class).value();
     }
 
     // 統一快取寫入入口，方便控 TTL
     public void setUserCache(String username, User user) {
-        try {
-            String key = UserKeys.userInfo(username);
-            String json = objectMapper.writeValueAsString(user);
-            cacheService.set(key, json, randomTtl());
-        } catch (Exception ignored) {
-        }
+        nearCache.put(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(username), user, randomTtl());
     }
 
     // 更新後要清理對應快取與分頁快取
@@ -213,13 +311,20 @@ public class UserService {
                 throw new BizException(ErrorCode.USER_NOT_FOUND, "用戶不存在：" + user.getUsername());
             }
             dbUser.setEmail(user.getEmail());
+            boolean passwordChanged = !passwordEncoder.matches(user.getPassword(), dbUser.getPassword());
             dbUser.setPassword(passwordEncoder.encode(user.getPassword()));
 
             User updated = userRepository.save(dbUser);
+            if (passwordChanged) {
+                // 改密碼後舊的登入都要重新來過，偷到的 refresh token 也換不到新的 access token
+                refreshTokenService.revokeUser(updated.getUsername());
+            }
 
-            String key = UserKeys.userInfo(updated.getUsername());
-            cacheService.delete(key);
-            cacheService.deleteByPrefix("user:list:page:");
+            // 刪 Redis 之外也要通知每台清掉本機快取
+            AfterCommit.run(() -> {
+                nearCache.evict(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(updated.getUsername()));
+                cacheService.invalidateTag(CacheTags.USERS);
+            });
 
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] updateUser success cost={}ms keyResult=userId={}", cost, updated.getId());
@@ -235,14 +340,17 @@ public class UserService {
         long start = System.currentTimeMillis();
         log.info("[SERVICE] pageUsers start keyParams=page={},size={}", page, size);
         try {
-            String key = UserKeys.userListPage(page, size);
-            String json = cacheService.get(key);
+            CacheKey cacheKey = UserKeys.userListPage(page, size);
+            String key = cacheKey.key();
+            CacheEntry entry = cacheService.getEntry(key);
 
-            if (json != null) {
+            if (entry != null) {
+                // 快過期時照樣回快取裡的值，背景提前重建
+                cacheRefresher.refreshIfNeeded(key, entry, () -> reloadUserPage(cacheKey, page, size));
                 try {
                     // 分頁列表命中 Redis，面試時可以直接從日誌看到。
                     AuditContext.put("userPageRedis", "HIT");
-                    CachedPage cached = objectMapper.readValue(json, CachedPage.class);
+                    CachedPage cached = cacheService.decode(entry, CachedPage.class);
                     Page<User> result = new PageImpl<>(
                             cached.getContent(),
                             PageRequest.of(page - 1, size),
@@ -256,19 +364,9 @@ public class UserService {
                 }
             }
 
-            // 分頁快取沒中，這次從 DB 查，查完再回填 Redis。
+            // 分頁快取沒中，這次從 DB 查，查完再回填 Redis；同一頁同時只放一個請求查。
             AuditContext.put("userPageRedis", "MISS");
-            PageRequest pr = PageRequest.of(page - 1, size);
-            Page<User> pageData = userRepository.findAll(pr);
-
-            try {
-                CachedPage cached = new CachedPage();
-                cached.setContent(pageData.getContent());
-                cached.setTotal(pageData.getTotalElements());
-                String listJson = objectMapper.writeValueAsString(cached);
-                cacheService.set(key, listJson, randomTtl());
-            } catch (Exception ignored) {
-            }
+            Page<User> pageData = singleFlight.load(key, () -> loadUserPage(cacheKey, page, size));
 
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] pageUsers success cost={}ms keyResult=total={}",
@@ -280,6 +378,32 @@ public class UserService {
         }
     }
 
+    // 分頁回源：先重讀一次 Redis，沒有才查 DB 並回填
+    private Page<User> loadUserPage(CacheKey cacheKey, int page, int size) {
+        PageRequest pr = PageRequest.of(page - 1, size);
+        CachedPage cached = cacheService.getObject(cacheKey.key(), CachedPage.class);
+        if (cached != null) {
+            return new PageImpl<>(cached.getContent(), pr, cached.getTotal());
+        }
+
+        return reloadUserPage(cacheKey, page, size);
+    }
+
+    // 查 DB 回填分頁快取，順便記下花了多久（提前刷新用）
+    private Page<User> reloadUserPage(CacheKey cacheKey, int page, int size) {
+        long start = System.currentTimeMillis();
+        Page<User> pageData = userRepository.findAll(PageRequest.of(page - 1, size));
+        try {
+            CachedPage cached = new CachedPage();
+            cached.setContent(pageData.getContent());
+            cached.setTotal(pageData.getTotalElements());
+            // 寫入時順便掛到 users 標籤下，用戶有異動就整批清
+            cacheService.setObject(cacheKey, cached, randomTtl(), Math.max(System.currentTimeMillis() - start, 1));
+        } catch (Exception ignored) {
+        }
+        return pageData;
+    }
+
     // 這裡用分散式鎖，避免併發建立同名用戶
     @Transactional
     public User createUser(User user) {
@@ -307,7 +431,11 @@ public class UserService {
             user.setPassword(passwordEncoder.encode(user.getPassword()));
             User saved = userRepository.save(user);
 
-            cacheService.deleteByPrefix("user:list:page:");
+            AfterCommit.run(() -> {
+                cacheService.invalidateTag(CacheTags.USERS);
+                // 之前查過不存在的話會有空值快取，建好就清掉
+                nearCache.evict(UserKeys.USER_INFO_CACHE, UserKeys.userInfo(username));
+            });
             long cost = System.currentTimeMillis() - start;
             log.info("[SERVICE] createUser success cost={}ms keyResult=userId={}", cost, saved.getId());
             return saved;
@@ -1,18 +1,29 @@
 package com.jinkops.service.es;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.BulkRequest;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.json.JsonData;
+import com.jinkops.dto.log.BulkIndexResult;
+import com.jinkops.dto.log.BulkIndexResult.ItemStatus;
+import com.jinkops.dto.log.BulkIndexResult.Outcome;
+import com.jinkops.dto.log.LogSearchCursor;
 import com.jinkops.entity.log.OperationLogEntity;
+import com.jinkops.vo.CursorPage;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -21,11 +32,12 @@ import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 操作日誌 ES 搜尋服務
@@ -35,13 +47,27 @@ import java.util.Set;
  * 2. 回傳列表交給 Controller
  * 3. 例外交給上層處理
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class OperationLogEsService {
 
-    private static final String INDEX_NAME = "operation_log_search";
+    // ES 叫我們慢一點（429）或暫時不可用（503）才重送，其他錯誤重送也不會好
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(429, 503);
+    // 游標翻頁時 point-in-time 的保留時間，每翻一頁會續期
+    private static final String PIT_KEEP_ALIVE = "2m";
+
     private final ElasticsearchClient elasticsearchClient;
 
+    @Value("${elasticsearch.bulk.max-retries:3}")
+    private int bulkMaxRetries;
+
+    @Value("${elasticsearch.bulk.base-backoff-ms:200}")
+    private long bulkBaseBackoffMs;
+
+    @Value("${elasticsearch.bulk.max-backoff-ms:5000}")
+    private long bulkMaxBackoffMs;
+
     public Page<OperationLogEntity> search(
             String keyword,
             Long startTime,
@@ -49,8 +75,220 @@ public class OperationLogEsService {
             int page,
             int size
     ) throws Exception {
-        int from = Math.max(page, 0) * Math.max(size, 1);
+        int responseSize = Math.max(size, 1);
+        int from = Math.max(page, 0) * responseSize;
+        Page<OperationLogEntity> slice = searchSlice(keyword, startTime, endTime, from, responseSize);
+        return new PageImpl<>(slice.getContent(), PageRequest.of(page, responseSize), slice.getTotalElements());
+    }
+
+    // 從第 from 筆開始取 size 筆；size 可以是 0，這時只拿總筆數。給 ES + DB 合併翻頁用
+    public Page<OperationLogEntity> searchSlice(
+            String keyword,
+            Long startTime,
+            Long endTime,
+            int from,
+            int size
+    ) throws Exception {
+        List<Query> mustQueries = buildQueries(keyword, startTime, endTime);
+        // 只碰時間區間涵蓋到的月份索引
+        List<String> indices = OperationLogIndices.readIndices(startTime, endTime);
 
+        SearchResponse<Map> response = elasticsearchClient.search(s -> s
+                        .index(indices)
+                        .ignoreUnavailable(true)
+                        .allowNoIndices(true)
+                        .query(q -> q.bool(BoolQuery.of(b -> b.must(mustQueries))))
+                        .sort(so -> so
+                                .field(f -> f
+                                        .field("createTime")
+                                        .order(SortOrder.Desc)
+                                )
+                        )
+                        .from(Math.max(from, 0))
+                        .size(Math.max(size, 0)),
+                Map.class
+        );
+
+        List<OperationLogEntity> result = parseResponse(response.hits().hits());
+        long total = response.hits().total() != null ? response.hits().total().value() : result.size();
+
+        return new PageImpl<>(result, Pageable.unpaged(), total);
+    }
+
+    // 游標分頁：按 [createTime, id] 倒序，用 search_after 接著上一頁往下查，深頁也是固定成本。
+    // usePit=true 時會開 point-in-time，整段翻頁看到的是同一份快照。
+    public CursorPage<OperationLogEntity> searchAfter(
+            String keyword,
+            Long startTime,
+            Long endTime,
+            int size,
+            LogSearchCursor cursor,
+            boolean usePit
+    ) throws Exception {
+        int responseSize = Math.max(size, 1);
+        List<Query> mustQueries = buildQueries(keyword, startTime, endTime);
+
+        String pitId = cursor != null ? cursor.getPitId() : null;
+        if (usePit && pitId == null) {
+            List<String> indices = OperationLogIndices.readIndices(startTime, endTime);
+            pitId = elasticsearchClient.openPointInTime(o -> o
+                    .index(indices)
+                    .ignoreUnavailable(true)
+                    .keepAlive(k -> k.time(PIT_KEEP_ALIVE))
+            ).id();
+        }
+
+        String currentPit = pitId;
+        // 多查一筆，用來判斷還有沒有下一頁
+        SearchResponse<Map> response = elasticsearchClient.search(s -> {
+                    if (currentPit != null) {
+                        s.pit(p -> p.id(currentPit).keepAlive(k -> k.time(PIT_KEEP_ALIVE)));
+                    } else {
+                        s.index(OperationLogIndices.readIndices(startTime, endTime))
+                                .ignoreUnavailable(true)
+                                .allowNoIndices(true);
+                    }
+                    s.query(q -> q.bool(BoolQuery.of(b -> b.must(mustQueries))))
+                            .sort(so -> so.field(f -> f.field("createTime").order(SortOrder.Desc)))
+                            .sort(so -> so.field(f -> f.field("id").order(SortOrder.Desc)))
+                            .trackTotalHits(t -> t.enabled(false))
+                            .size(responseSize + 1);
+                    if (cursor != null) {
+                        s.searchAfter(List.of(FieldValue.of(cursor.getCreateTime()), FieldValue.of(cursor.getId())));
+                    }
+                    return s;
+                },
+                Map.class
+        );
+
+        List<Hit<Map>> hits = response.hits().hits();
+        boolean hasMore = hits.size() > responseSize;
+        List<Hit<Map>> pageHits = hasMore ? hits.subList(0, responseSize) : hits;
+        List<OperationLogEntity> content = parseResponse(pageHits);
+
+        // ES 可能換新的 pit id，下一頁要用回應裡的
+        String nextPit = response.pitId() != null ? response.pitId() : currentPit;
+        String nextCursor = null;
+        if (hasMore) {
+            List<FieldValue> sortValues = pageHits.get(pageHits.size() - 1).sort();
+            nextCursor = new LogSearchCursor(
+                    sortValues.get(0).longValue(),
+                    sortValues.get(1).longValue(),
+                    nextPit
+            ).encode();
+        } else if (nextPit != null) {
+            // 翻到底了，pit 沒用了就順手關掉
+            closePointInTime(nextPit);
+        }
+        return new CursorPage<>(content, nextCursor, hasMore);
+    }
+
+    // 一次 bulk 寫入多筆，回傳每筆的狀態。
+    // 429 / 503 的單筆會退避後重送，mapping 錯誤這種永久失敗不重試，標成 REJECTED 交給呼叫端丟死信。
+    // 整個 bulk 請求失敗（ES 連不上）還是丟例外，交給呼叫端處理。
+    public BulkIndexResult bulkIndex(List<OperationLogEntity> entities) throws Exception {
+        if (entities == null || entities.isEmpty()) {
+            return BulkIndexResult.empty();
+        }
+
+        ItemStatus[] statuses = new ItemStatus[entities.size()];
+        List<Integer> pending = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            pending.add(i);
+        }
+
+        int attempt = 0;
+        while (!pending.isEmpty()) {
+            attempt++;
+            BulkResponse response = sendBulk(entities, pending);
+            // bulk 回來的 items 跟送出的順序一一對應
+            List<BulkResponseItem> items = response.items();
+            List<Integer> retry = new ArrayList<>();
+            for (int k = 0; k < items.size(); k++) {
+                int position = pending.get(k);
+                BulkResponseItem item = items.get(k);
+                if (item.error() == null) {
+                    statuses[position] = new ItemStatus(position, item.id(), item.status(),
+                            Outcome.INDEXED, null, attempt);
+                    continue;
+                }
+
+                boolean retryable = RETRYABLE_STATUS.contains(item.status());
+                if (retryable && attempt <= bulkMaxRetries) {
+                    retry.add(position);
+                    continue;
+                }
+                String reason = item.error().type() + ": " + item.error().reason();
+                statuses[position] = new ItemStatus(position, item.id(), item.status(),
+                        retryable ? Outcome.RETRYABLE : Outcome.REJECTED, reason, attempt);
+            }
+
+            if (retry.isEmpty()) {
+                break;
+            }
+            long backoff = backoffMillis(attempt);
+            log.warn("[ES] bulk throttled, retry items={} attempt={} backoff={}ms", retry.size(), attempt, backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int position : retry) {
+                    statuses[position] = new ItemStatus(position, docId(entities.get(position)), 429,
+                            Outcome.RETRYABLE, "interrupted while waiting to retry", attempt);
+                }
+                break;
+            }
+            pending = retry;
+        }
+
+        BulkIndexResult result = new BulkIndexResult(Arrays.asList(statuses));
+        for (ItemStatus status : result.getItems()) {
+            if (status.getOutcome() != Outcome.INDEXED) {
+                log.warn("[ES] bulk item failed id={} status={} outcome={} attempts={} reason={}",
+                        status.getDocId(), status.getStatus(), status.getOutcome(),
+                        status.getAttempts(), status.getReason());
+            }
+        }
+        if (result.hasFailures()) {
+            log.warn("[ES] bulk index finished total={} indexed={} retryable={} rejected={}",
+                    result.getTotal(), result.getSucceeded(), result.getRetryable(), result.getRejected());
+        }
+        return result;
+    }
+
+    private BulkResponse sendBulk(List<OperationLogEntity> entities, List<Integer> positions) throws Exception {
+        BulkRequest.Builder bulkBuilder = new BulkRequest.Builder();
+        for (int position : positions) {
+            OperationLogEntity entity = entities.get(position);
+            bulkBuilder.operations(op -> op
+                    .index(i -> i
+                            // 按 createTime 落到當月的索引，ES 依 index template 自動建立
+                            .index(OperationLogIndices.writeIndex(entity.getCreateTime()))
+                            .id(docId(entity))
+                            .document(entityToDoc(entity))
+                    )
+            );
+        }
+        return elasticsearchClient.bulk(bulkBuilder.build());
+    }
+
+    // 指數退避 + 抖動：上限是 base * 2^(attempt-1)，實際等待取上限的一半到全部之間的隨機值
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(bulkMaxBackoffMs, bulkBaseBackoffMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            elasticsearchClient.closePointInTime(c -> c.id(pitId));
+        } catch (Exception e) {
+            // 關不掉也沒關係，keep-alive 到了 ES 自己會收
+            log.debug("[ES] close point in time failed: {}", e.getMessage());
+        }
+    }
+
+    // 關鍵字 + 時間區間，分頁查詢和游標查詢共用
+    private List<Query> buildQueries(String keyword, Long startTime, Long endTime) {
         List<Query> mustQueries = new ArrayList<>();
 
         if (keyword != null && !keyword.isBlank()) {
@@ -92,80 +330,7 @@ public class OperationLogEsService {
                     ))
             ));
         }
-
-        int responseSize = Math.max(size, 1);
-        SearchResponse<Map> response = elasticsearchClient.search(s -> s
-                        .index(INDEX_NAME)
-                        .query(q -> q.bool(BoolQuery.of(b -> b.must(mustQueries))))
-                        .sort(so -> so
-                                .field(f -> f
-                                        .field("createTime")
-                                        .order(co.elastic.clients.elasticsearch._types.SortOrder.Desc)
-                                )
-                        )
-                        .from(from)
-                        .size(responseSize),
-                Map.class
-        );
-
-        List<OperationLogEntity> result = parseResponse(response.hits().hits());
-        long total = response.hits().total() != null ? response.hits().total().value() : result.size();
-
-        return new PageImpl<>(result, PageRequest.of(page, responseSize), total);
-    }
-
-    public void bulkIndex(List<OperationLogEntity> entities) throws Exception {
-        if (entities == null || entities.isEmpty()) {
-            return;
-        }
-
-        BulkRequest.Builder bulkBuilder = new BulkRequest.Builder();
-        for (OperationLogEntity entity : entities) {
-            String docId = entity.getId() != null ? String.valueOf(entity.getId()) : entity.getTraceId();
-            bulkBuilder.operations(op -> op
-                    .index(i -> i
-                            .index(INDEX_NAME)
-                            .id(docId)
-                            .document(entityToDoc(entity))
-                    )
-            );
-        }
-
-        BulkResponse response = elasticsearchClient.bulk(bulkBuilder.build());
-        if (response.errors()) {
-            // 只記錄警告，不影響主要查詢流程
-            System.err.println("[ES] bulk index returned errors for operation logs");
-        }
-    }
-
-    public Set<Long> findExistingIds(List<Long> ids) throws Exception {
-        if (ids == null || ids.isEmpty()) {
-            return Set.of();
-        }
-
-        List<String> values = ids.stream()
-                .filter(id -> id != null)
-                .map(String::valueOf)
-                .toList();
-        if (values.isEmpty()) {
-            return Set.of();
-        }
-
-        SearchResponse<Map> response = elasticsearchClient.search(s -> s
-                        .index(INDEX_NAME)
-                        .query(q -> q.ids(i -> i.values(values)))
-                        .size(values.size()),
-                Map.class
-        );
-
-        Set<Long> existingIds = new HashSet<>();
-        for (Hit<Map> hit : response.hits().hits()) {
-            Long id = parseId(hit.id(), hit.source() == null ? null : hit.source().get("id"));
-            if (id != null) {
-                existingIds.add(id);
-            }
-        }
-        return existingIds;
+        return mustQueries;
     }
 
     private List<OperationLogEntity> parseResponse(List<Hit<Map>> hits) {
@@ -195,6 +360,11 @@ public class OperationLogEsService {
         return result;
     }
 
+    // 有 id 用 id，沒有就退回 traceId
+    private String docId(OperationLogEntity entity) {
+        return entity.getId() != null ? String.valueOf(entity.getId()) : entity.getTraceId();
+    }
+
     private Map<String, Object> entityToDoc(OperationLogEntity entity) {
         Map<String, Object> doc = new HashMap<>();
         doc.put("id", entity.getId());
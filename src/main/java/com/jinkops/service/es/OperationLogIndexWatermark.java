@@ -0,0 +1,97 @@
+package com.jinkops.service.es;
+
+import com.jinkops.cache.key.LogKeys;
+import com.jinkops.dto.log.BulkIndexResult;
+import com.jinkops.entity.log.OperationLogEntity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * ES 索引水位線
+ *
+ * 消費者每寫完一批 bulk 就把「ES 已經收到哪個 createTime」推進 Redis，
+ * 查詢時拿查詢區間跟水位線比：水位線以下交給 ES，只有水位線以上那一小段才需要看 DB。
+ * 水位線只會往前走，多個消費者同時推進也不會倒退。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OperationLogIndexWatermark {
+
+    // 比現有值大才寫入，保證水位線單調遞增
+    private static final DefaultRedisScript<Long> ADVANCE_SCRIPT = new DefaultRedisScript<>(
+            "local cur = redis.call('GET', KEYS[1]) "
+                    + "if (not cur) or tonumber(ARGV[1]) > tonumber(cur) then "
+                    + "redis.call('SET', KEYS[1], ARGV[1]) return 1 end "
+                    + "return 0",
+            Long.class
+    );
+
+    private final StringRedisTemplate redis;
+
+    // MQ 不保證嚴格按 createTime 到達，讀的時候往回退一點當安全邊界
+    @Value("${app.log.search.watermark-safety-ms:5000}")
+    private long safetyMillis;
+
+    // 用一批 bulk 的結果推進水位線
+    public void advance(List<OperationLogEntity> entities, BulkIndexResult result) {
+        long indexedMax = Long.MIN_VALUE;
+        long retryMin = Long.MAX_VALUE;
+        for (int i = 0; i < entities.size(); i++) {
+            Long time = epochMillis(entities.get(i));
+            if (time == null) {
+                continue;
+            }
+            if (result.outcomeOf(i) == BulkIndexResult.Outcome.RETRYABLE) {
+                retryMin = Math.min(retryMin, time);
+            } else {
+                // 永久失敗的已經進死信，不會再來，一樣算處理過
+                indexedMax = Math.max(indexedMax, time);
+            }
+        }
+        // 還在重試的那幾筆之前才算真的寫完
+        long candidate = retryMin == Long.MAX_VALUE ? indexedMax : Math.min(indexedMax, retryMin - 1);
+        if (candidate == Long.MIN_VALUE) {
+            return;
+        }
+
+        try {
+            redis.execute(ADVANCE_SCRIPT, List.of(LogKeys.esIndexWatermark()), String.valueOf(candidate));
+        } catch (Exception e) {
+            // 推不上去只是查詢時多看一段 DB，不影響消費
+            log.warn("[ES] advance index watermark failed watermark={} reason={}", candidate, e.getMessage());
+        }
+    }
+
+    /**
+     * 目前可信的水位線（epoch 毫秒，已扣掉安全邊界）。
+     * 還沒有水位線或 Redis 讀不到時回 null，由呼叫端決定怎麼處理。
+     */
+    public Long current() {
+        try {
+            String value = redis.opsForValue().get(LogKeys.esIndexWatermark());
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            return Long.parseLong(value) - safetyMillis;
+        } catch (Exception e) {
+            log.warn("[ES] read index watermark failed reason={}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Long epochMillis(OperationLogEntity entity) {
+        if (entity.getCreateTime() == null) {
+            return null;
+        }
+        // 跟寫進 ES 的 createTime 用同一個時區換算
+        return entity.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
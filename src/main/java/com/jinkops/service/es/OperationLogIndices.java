@@ -0,0 +1,88 @@
+package com.jinkops.service.es;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 操作日誌的 ES 索引命名
+ *
+ * 按月滾動：operation_log_search-2026.10 這種，寫入按 createTime 落到對應月份，
+ * 查詢走讀別名，或是只查時間區間涵蓋到的那幾個月份。
+ * 舊版單一索引 operation_log_search 也掛在讀別名上，資料保留期過了再手動刪。
+ */
+public final class OperationLogIndices {
+
+    // 舊版單一索引，升級前寫進去的資料還在這裡
+    public static final String LEGACY_INDEX = "operation_log_search";
+    public static final String INDEX_PREFIX = "operation_log_search-";
+    public static final String INDEX_PATTERN = INDEX_PREFIX + "*";
+    // 查詢用的讀別名，index template 會自動把新的月份索引掛上來
+    public static final String READ_ALIAS = "operation_log_read";
+    public static final String TEMPLATE_NAME = "operation_log_template";
+
+    // 區間跨太多個月就直接查別名，索引清單太長沒意義
+    private static final int MAX_ROUTED_MONTHS = 12;
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM");
+
+    private OperationLogIndices() {
+    }
+
+    // 寫入時落在哪個月份索引
+    public static String writeIndex(LocalDateTime createTime) {
+        YearMonth month = createTime == null ? YearMonth.now() : YearMonth.from(createTime);
+        return indexOf(month);
+    }
+
+    public static String indexOf(YearMonth month) {
+        return INDEX_PREFIX + month.format(MONTH_FORMAT);
+    }
+
+    // 從索引名稱反推月份，不是月份索引就回 null
+    public static YearMonth monthOf(String indexName) {
+        if (indexName == null || !indexName.startsWith(INDEX_PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(indexName.substring(INDEX_PREFIX.length()), MONTH_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 查詢要碰哪些索引。
+     * 沒給開始時間或跨太多月就查整個讀別名；否則只列出區間涵蓋的月份，加上舊版索引。
+     * 呼叫端要搭配 ignore_unavailable，已經被保留期刪掉的月份直接跳過。
+     */
+    public static List<String> readIndices(Long startTime, Long endTime) {
+        if (startTime == null) {
+            return List.of(READ_ALIAS);
+        }
+        YearMonth from = monthOfMillis(startTime);
+        YearMonth to = monthOfMillis(endTime == null ? System.currentTimeMillis() : endTime);
+        if (to.isBefore(from)) {
+            return List.of(READ_ALIAS);
+        }
+        if (from.plusMonths(MAX_ROUTED_MONTHS).isBefore(to)) {
+            return List.of(READ_ALIAS);
+        }
+
+        List<String> indices = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            indices.add(indexOf(month));
+        }
+        indices.add(LEGACY_INDEX);
+        return indices;
+    }
+
+    // 跟寫進 ES 的 createTime 用同一個時區
+    private static YearMonth monthOfMillis(long epochMilli) {
+        return YearMonth.from(Instant.ofEpochMilli(epochMilli).atZone(ZoneId.systemDefault()));
+    }
+}
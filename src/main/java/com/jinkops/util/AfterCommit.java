@@ -0,0 +1,36 @@
+package com.jinkops.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 交易提交後才執行的動作，快取失效用。
+ *
+ * 在交易裡就清快取的話，提交前進來的請求會讀到舊資料再寫回快取，舊值又活一整個 TTL；
+ * 提交後再清，回源讀到的一定是新資料。交易回滾就不清。沒有交易時直接執行。
+ */
+@Slf4j
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // 資料已經提交，這裡失敗只能等快取 TTL 自己過期
+                    log.error("[CACHE] invalidation after commit failed reason={}", e.getMessage(), e);
+                }
+            }
+        });
+    }
+}
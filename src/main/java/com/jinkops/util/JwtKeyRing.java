@@ -0,0 +1,253 @@
+package com.jinkops.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT 金鑰環：簽發用目前這把，驗證時照 token header 的 kid 找對應的公鑰。
+ *
+ * HS256：沿用設定檔裡的共用 secret，kid 固定，不輪替。
+ * ES256：每台啟動時自己產生金鑰對，私鑰只在本機記憶體；公鑰連同退役時間發到 Redis 的 hash，
+ * 其他台驗證時照 kid 讀一次就放本機。定時輪替，舊公鑰保留到它簽過的 token 都過期再加一段重疊時間，
+ * 換金鑰不會把人踢下線，也不用在每台之間傳 secret。
+ * 沒有 kid 的舊 HS256 token 在 accept-legacy 開著時照樣用共用 secret 驗。
+ */
+@Slf4j
+@Component
+public class JwtKeyRing extends SigningKeyResolverAdapter {
+
+    public static final String KEYS_REDIS_KEY = "jinkops:jwt:keys";
+    public static final String LEGACY_KID = "hs256";
+
+    private final StringRedisTemplate redis;
+    private final SignatureAlgorithm algorithm;
+    // 共用 secret（HS256 簽發、或驗證舊 token 用），沒設定就是 null
+    private final Key legacyKey;
+    private final long tokenTtlMillis;
+
+    // 每把金鑰用多久換一次
+    @Value("${app.security.jwt.keys.rotation-hours:24}")
+    private long rotationHours;
+
+    // 舊公鑰在最後一張 token 過期後再多留多久（時鐘誤差、還在路上的請求）
+    @Value("${app.security.jwt.keys.overlap-minutes:10}")
+    private long overlapMinutes;
+
+    // ES256 模式下還接不接受沒有 kid 的舊 HS256 token
+    @Value("${app.security.jwt.keys.accept-legacy:true}")
+    private boolean acceptLegacy;
+
+    private volatile SigningKey current;
+    // kid -> 驗證用的金鑰，讀過一次就留在本機
+    private final Map<String, VerificationKey> verificationKeys = new ConcurrentHashMap<>();
+    // Redis 裡也沒有的 kid 記一下，亂填 kid 的 token 不會每次都打 Redis
+    private final Cache<String, Boolean> unknownKids = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Duration.ofSeconds(60))
+            .build();
+
+    public JwtKeyRing(StringRedisTemplate redis,
+                      @Value("${app.security.jwt.algorithm:HS256}") String algorithm,
+                      @Value("${app.security.jwt.secret:}") String secret,
+                      @Value("${app.security.jwt.expiration:86400000}") long tokenTtlMillis) {
+        this.redis = redis;
+        this.algorithm = parseAlgorithm(algorithm);
+        this.legacyKey = secret == null || secret.isEmpty() ? null : buildLegacyKey(secret);
+        this.tokenTtlMillis = tokenTtlMillis;
+        if (this.algorithm == SignatureAlgorithm.HS256 && legacyKey == null) {
+            throw new IllegalStateException("app.security.jwt.secret is required for HS256");
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (algorithm == SignatureAlgorithm.HS256) {
+            current = new SigningKey(LEGACY_KID, SignatureAlgorithm.HS256, legacyKey, System.currentTimeMillis());
+            log.info("[JWT] key ring ready algorithm=HS256 kid={}", LEGACY_KID);
+            return;
+        }
+        rotate();
+    }
+
+    // 目前簽發用的金鑰
+    public SigningKey current() {
+        return current;
+    }
+
+    /**
+     * 定時任務呼叫：到期就換新金鑰，順便把目前這把的退役時間往後延、清掉 Redis 裡已經退役的公鑰。
+     */
+    public void maintain() {
+        if (algorithm == SignatureAlgorithm.HS256) {
+            return;
+        }
+        SigningKey key = current;
+        if (System.currentTimeMillis() - key.createdAt() >= TimeUnit.HOURS.toMillis(rotationHours)) {
+            rotate();
+        } else {
+            publish(key);
+        }
+        pruneRetired();
+    }
+
+    // 產生新的金鑰對，先把公鑰發出去再開始用它簽
+    public synchronized void rotate() {
+        KeyPair pair = Keys.keyPairFor(algorithm);
+        String kid = "es256-" + Long.toString(System.currentTimeMillis(), 36)
+                + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000));
+        SigningKey next = new SigningKey(kid, algorithm, pair.getPrivate(), System.currentTimeMillis());
+        verificationKeys.put(kid, new VerificationKey(algorithm, pair.getPublic(), retireAt()));
+        publish(next, pair.getPublic());
+        SigningKey previous = current;
+        current = next;
+        log.info("[JWT] key rotated algorithm={} kid={} previousKid={}",
+                algorithm, kid, previous == null ? null : previous.kid());
+    }
+
+    // 給 jjwt 的解析器用：照 kid 找驗證金鑰
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+        String kid = header.getKeyId();
+        if (kid == null || LEGACY_KID.equals(kid)) {
+            if (legacyKey == null || (algorithm != SignatureAlgorithm.HS256 && !acceptLegacy)) {
+                throw new SignatureException("legacy HS256 token not accepted");
+            }
+            return legacyKey;
+        }
+
+        VerificationKey key = verificationKeys.get(kid);
+        if (key == null || key.retired()) {
+            key = load(kid);
+        }
+        // header 的 alg 要跟這把金鑰一致，避免拿公鑰當 HMAC secret 之類的混用
+        if (!key.algorithm().getValue().equals(header.getAlgorithm())) {
+            throw new SignatureException("algorithm mismatch for kid " + kid);
+        }
+        return key.key();
+    }
+
+    private VerificationKey load(String kid) {
+        if (unknownKids.getIfPresent(kid) != null) {
+            throw new SignatureException("unknown kid " + kid);
+        }
+        Object raw = redis.opsForHash().get(KEYS_REDIS_KEY, kid);
+        VerificationKey key = raw == null ? null : decode(String.valueOf(raw));
+        if (key == null || key.retired()) {
+            verificationKeys.remove(kid);
+            unknownKids.put(kid, Boolean.TRUE);
+            throw new SignatureException("unknown kid " + kid);
+        }
+        verificationKeys.put(kid, key);
+        log.info("[JWT] verification key loaded kid={} algorithm={}", kid, key.algorithm());
+        return key;
+    }
+
+    private void publish(SigningKey key) {
+        VerificationKey local = verificationKeys.get(key.kid());
+        if (local != null && local.key() instanceof PublicKey publicKey) {
+            publish(key, publicKey);
+        }
+    }
+
+    // Redis 裡存 "演算法|退役時間|Base64(X.509 公鑰)"
+    private void publish(SigningKey key, PublicKey publicKey) {
+        long retireAt = retireAt();
+        verificationKeys.put(key.kid(), new VerificationKey(key.algorithm(), publicKey, retireAt));
+        String value = key.algorithm().getValue() + "|" + retireAt + "|"
+                + Base64.getEncoder().encodeToString(publicKey.getEncoded());
+        redis.opsForHash().put(KEYS_REDIS_KEY, key.kid(), value);
+    }
+
+    // 目前這把最晚還會簽到下一次維護，之後簽出的 token 最多活 tokenTtl，再加重疊時間
+    private long retireAt() {
+        return System.currentTimeMillis()
+                + TimeUnit.HOURS.toMillis(rotationHours)
+                + tokenTtlMillis
+                + TimeUnit.MINUTES.toMillis(overlapMinutes);
+    }
+
+    private void pruneRetired() {
+        verificationKeys.entrySet().removeIf(entry -> entry.getValue().retired());
+        Map<Object, Object> all = redis.opsForHash().entries(KEYS_REDIS_KEY);
+        for (Map.Entry<Object, Object> entry : all.entrySet()) {
+            VerificationKey key = decode(String.valueOf(entry.getValue()));
+            if (key == null || key.retired()) {
+                redis.opsForHash().delete(KEYS_REDIS_KEY, entry.getKey());
+                log.info("[JWT] retired key removed kid={}", entry.getKey());
+            }
+        }
+    }
+
+    private VerificationKey decode(String value) {
+        try {
+            String[] parts = value.split("\\|", 3);
+            SignatureAlgorithm alg = SignatureAlgorithm.forName(parts[0]);
+            long retireAt = Long.parseLong(parts[1]);
+            byte[] encoded = Base64.getDecoder().decode(parts[2]);
+            PublicKey publicKey = KeyFactory.getInstance(alg.isEllipticCurve() ? "EC" : "RSA")
+                    .generatePublic(new X509EncodedKeySpec(encoded));
+            return new VerificationKey(alg, publicKey, retireAt);
+        } catch (Exception e) {
+            log.warn("[JWT] bad verification key entry reason={}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static SignatureAlgorithm parseAlgorithm(String name) {
+        return switch (name == null ? "" : name.trim().toUpperCase()) {
+            case "HS256" -> SignatureAlgorithm.HS256;
+            case "ES256" -> SignatureAlgorithm.ES256;
+            // jjwt 0.11 還沒有 EdDSA，要等升級到 0.12 才能開
+            default -> throw new IllegalStateException("unsupported app.security.jwt.algorithm: " + name
+                    + " (supported: HS256, ES256)");
+        };
+    }
+
+    // 舊行為：secret 不足 32 bytes 會補 0，保留下來舊 token 才驗得過
+    private static Key buildLegacyKey(String secret) {
+        byte[] raw = secret.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < 32) {
+            log.warn("[JWT] app.security.jwt.secret shorter than 32 bytes, zero-padded; use a longer secret or ES256");
+        }
+        byte[] keyBytes = Arrays.copyOf(raw, Math.max(32, raw.length));
+        return Keys.hmacShaKeyFor(keyBytes);
+    }
+
+    /**
+     * 簽發用的金鑰。
+     */
+    public record SigningKey(String kid, SignatureAlgorithm algorithm, Key key, long createdAt) {
+    }
+
+    private record VerificationKey(SignatureAlgorithm algorithm, Key key, long retireAt) {
+
+        boolean retired() {
+            return System.currentTimeMillis() > retireAt;
+        }
+    }
+}
@@ -1,86 +1,198 @@
 package com.jinkops.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.jinkops.id.SnowflakeIdWorker;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
-import java.security.Key;
-import java.util.Arrays;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 // JWT 工具類：生成與解析 Token
 @Component
 public class JwtUtil {
 
-    private final Key secretKey;
+    // 角色碼、權限版本
+    public static final String CLAIM_ROLES = "roles";
+    public static final String CLAIM_PERMISSION_VERSION = "pv";
+
+    private final JwtKeyRing keyRing;
     private final long expirationTime;
+    // 解析器是執行緒安全的，建一次重複用
+    private final JwtParser parser;
+    // 驗過的 token：摘要 -> claims，到 token 的 exp 就自動過期；max-size <= 0 代表不快取
+    private final Cache<String, Claims> verified;
 
     public JwtUtil(
-            @Value("${app.security.jwt.secret}") String secret,
-            @Value("${app.security.jwt.expiration:86400000}") long expirationTime
+            JwtKeyRing keyRing,
+            @Value("${app.security.jwt.expiration:86400000}") long expirationTime,
+            @Value("${app.security.jwt.verify-cache.max-size:10000}") long verifyCacheSize,
+            MeterRegistry meterRegistry
     ) {
-        this.secretKey = buildKey(secret);
+        this.keyRing = keyRing;
         this.expirationTime = expirationTime;
+        // 簽章金鑰照 header 的 kid 找，金鑰輪替後舊 token 一樣驗得過
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(keyRing)
+                .build();
+        this.verified = verifyCacheSize > 0 ? buildVerifiedCache(verifyCacheSize, meterRegistry) : null;
+    }
+
+    private Cache<String, Claims> buildVerifiedCache(long maxSize, MeterRegistry meterRegistry) {
+        Cache<String, Claims> cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        Date exp = claims.getExpiration();
+                        long remainingMs = exp == null ? 0 : exp.getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMs, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.verified");
+        return cache;
     }
 
-    private Key buildKey(String secret) {
-        byte[] raw = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
-        byte[] keyBytes = Arrays.copyOf(raw, Math.max(32, raw.length));
-        return Keys.hmacShaKeyFor(keyBytes);
+    // access token 的壽命（毫秒）
+    public long expirationMillis() {
+        return expirationTime;
     }
 
     // 生成 Token
     public String generateToken(String username) {
+        return generateToken(username, List.of(), -1);
+    }
+
+    // 生成 Token，帶上角色碼與簽發當下的權限版本，過濾器靠它們建立登入態不用查 DB；jti 給撤銷用
+    public String generateToken(String username, Collection<String> roles, long permissionVersion) {
         Date now = new Date();
         Date expiry = new Date(now.getTime() + expirationTime);
+        JwtKeyRing.SigningKey key = keyRing.current();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, key.kid())
+                .setId(Long.toString(SnowflakeIdWorker.nextId(), 36))
                 .setSubject(username)
+                .claim(CLAIM_ROLES, List.copyOf(roles))
+                .claim(CLAIM_PERMISSION_VERSION, permissionVersion)
                 .setIssuedAt(now)
                 .setExpiration(expiry)
-                .signWith(secretKey, SignatureAlgorithm.HS256)
+                .signWith(key.key(), key.algorithm())
                 .compact();
     }
 
-    // 解析 Token
+    // token 裡的角色碼（不含 ROLE_ 前綴）；舊 token 沒有就是空的
+    public List<String> roles(Claims claims) {
+        Object roles = claims.get(CLAIM_ROLES);
+        if (!(roles instanceof Collection<?> values)) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                result.add(String.valueOf(value));
+            }
+        }
+        return result;
+    }
+
+    // token 簽發時的權限版本；舊 token 沒有回 -1（一定跟目前版本對不上）
+    public long permissionVersion(Claims claims) {
+        Object version = claims.get(CLAIM_PERMISSION_VERSION);
+        return version instanceof Number number ? number.longValue() : -1;
+    }
+
+    // 解析 Token：驗簽章、驗過期，每次都做完整的簽章驗證 / base64 / JSON
     public Claims parseToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * 過濾器用的驗證入口：同一個 token 只完整驗一次，之後查本機快取直接拿 claims。
+     * 快取 key 是 token 的 SHA-256 摘要，不在記憶體裡留原始 token；驗不過直接拋例外。
+     * 回傳的 claims 可能被多個請求共用，只能讀不能改。
+     */
+    public Claims verify(String token) {
+        if (verified == null) {
+            return parseToken(token);
+        }
+        String digest = digest(token);
+        Claims claims = verified.getIfPresent(digest);
+        if (claims != null) {
+            Date exp = claims.getExpiration();
+            if (exp == null || exp.after(new Date())) {
+                return claims;
+            }
+            verified.invalidate(digest);
+        }
+        claims = parseToken(token);
+        verified.put(digest, claims);
+        return claims;
     }
 
     // 檢查是否過期
     public boolean isTokenExpired(String token) {
         try {
-            return parseToken(token).getExpiration().before(new Date());
+            return verify(token).getExpiration().before(new Date());
         } catch (Exception e) {
             return true;
         }
     }
 
-    // JwtAuthenticationFilter 需要：取得使用者名稱
+    // 取得使用者名稱；驗不過回 null
     public String extractUsername(String token) {
         try {
-            return parseToken(token).getSubject();
+            return verify(token).getSubject();
         } catch (Exception e) {
             return null;
         }
     }
 
-    // JwtAuthenticationFilter 需要：驗證 Token
+    // 驗證 Token 屬於這個用戶且沒過期（只解析一次）
     public boolean validateToken(String token, org.springframework.security.core.userdetails.UserDetails userDetails) {
         try {
-            String username = extractUsername(token);
-            return username != null
-                    && username.equals(userDetails.getUsername())
-                    && !isTokenExpired(token);
+            Claims claims = verify(token);
+            return claims.getSubject() != null
+                    && claims.getSubject().equals(userDetails.getUsername())
+                    && claims.getExpiration().after(new Date());
         } catch (Exception e) {
             return false;
         }
     }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // 每個 JVM 都一定有 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,18 @@
+package com.jinkops.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// 游標分頁返回格式：沒有總筆數，只告訴前端下一頁要帶什麼
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> content;    // 這一頁的資料
+    private String nextCursor;  // 下一頁的游標，沒有下一頁就是 null
+    private boolean hasMore;    // 還有沒有下一頁
+}
@@ -0,0 +1,26 @@
+package com.jinkops.vo;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+// 日誌分頁返回格式：多一個 totalExact，DB 兜底只數到上限時 totalElements / totalPages 都只是下限
+public class LogPage<T> extends PageImpl<T> {
+
+    private final boolean totalExact;
+
+    public LogPage(List<T> content, Pageable pageable, long total, boolean totalExact) {
+        super(content, pageable, total);
+        this.totalExact = totalExact;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    // 一般的 Page 都是精確總數
+    public static boolean isExact(org.springframework.data.domain.Page<?> page) {
+        return !(page instanceof LogPage<?> logPage) || logPage.isTotalExact();
+    }
+}
@@ -4,5 +4,10 @@ import lombok.Data;
 
 @Data
 public class LoginResponse {
+    // access token，壽命短
     private String token;
+    // 換發用，每用一次就換一張新的
+    private String refreshToken;
+    // access token 幾秒後過期
+    private long expiresIn;
 }
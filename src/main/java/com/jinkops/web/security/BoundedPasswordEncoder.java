@@ -0,0 +1,127 @@
+package com.jinkops.web.security;
+
+import com.jinkops.exception.BizException;
+import com.jinkops.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt 密碼雜湊器，雜湊一律丟到專用的有界執行緒池算。
+ *
+ * 登入尖峰時最多只有池子大小的 BCrypt 同時在算，排隊也有上限；
+ * 排不進去直接回 SYSTEM_BUSY，不會把 Tomcat 的工作執行緒全卡在算雜湊、拖垮其他 API。
+ * 強度（cost）可以固定，也可以啟動時實測一次、挑最接近目標毫秒數的那個。
+ * 登入時發現資料庫裡的雜湊強度跟目前不同，由 Spring Security 順手用明碼重算一份存回去。
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+    // 實測用的基準強度
+    private static final int PROBE_STRENGTH = 10;
+
+    private final BCryptPasswordEncoder delegate;
+    private final Executor executor;
+    private final int strength;
+    // 強度是設定檔指定的才往下調；各台自己實測的只往上升，避免不同機器互相改來改去
+    private final boolean pinned;
+    private final long waitMillis;
+
+    public BoundedPasswordEncoder(Executor executor, int strength, boolean pinned, long waitMillis) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.executor = executor;
+        this.strength = strength;
+        this.pinned = pinned;
+        this.waitMillis = waitMillis;
+    }
+
+    public int strength() {
+        return strength;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int cost = costOf(encodedPassword);
+        if (cost < 0) {
+            return false;
+        }
+        return pinned ? cost != strength : cost < strength;
+    }
+
+    /**
+     * 實測 BCrypt 在這台機器上的耗時，算出最接近 targetMillis 的強度。
+     * 強度每 +1 耗時翻倍，所以量一次基準強度就能推算。
+     */
+    public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(PROBE_STRENGTH);
+        // 第一次有 JIT、類別載入的成本，不算
+        probe.encode("calibration");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double probeMillis = Math.max(best / 1_000_000.0, 0.01);
+        int strength = PROBE_STRENGTH + (int) Math.round(Math.log(targetMillis / probeMillis) / Math.log(2));
+        int clamped = Math.max(Math.max(minStrength, 4), Math.min(Math.min(maxStrength, 31), strength));
+        log.info("[AUTH] bcrypt calibrated strength={} probeStrength={} probeMs={} targetMs={}",
+                clamped, PROBE_STRENGTH, String.format("%.1f", probeMillis), targetMillis);
+        return clamped;
+    }
+
+    private <T> T run(Supplier<T> task) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("[AUTH] password hashing rejected reason=executor_full");
+            throw new BizException(ErrorCode.SYSTEM_BUSY, "登入人數過多，請稍後再試");
+        }
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 排太久就不等了；已經排進池子的工作取消不掉，算完結果直接丟掉
+            future.cancel(false);
+            log.warn("[AUTH] password hashing timeout waitMs={}", waitMillis);
+            throw new BizException(ErrorCode.SYSTEM_BUSY, "登入人數過多，請稍後再試");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(ErrorCode.INTERNAL_ERROR, "密碼雜湊被中斷");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new BizException(ErrorCode.INTERNAL_ERROR, "密碼雜湊失敗");
+        }
+    }
+
+    private static int costOf(String encodedPassword) {
+        if (encodedPassword == null) {
+            return -1;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
@@ -1,31 +1,40 @@
 package com.jinkops.web.security;
 
-import com.jinkops.service.CustomUserDetailsService;
+import com.jinkops.service.PermissionResolver;
+import com.jinkops.service.TokenRevocationService;
 import com.jinkops.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private final CustomUserDetailsService userDetailsService;
+    private final PermissionResolver permissionResolver;
+    private final TokenRevocationService tokenRevocationService;
 
     public JwtAuthenticationFilter(JwtUtil jwtUtil,
-                                   CustomUserDetailsService userDetailsService) {
+                                   PermissionResolver permissionResolver,
+                                   TokenRevocationService tokenRevocationService) {
         this.jwtUtil = jwtUtil;
-        this.userDetailsService = userDetailsService;
+        this.permissionResolver = permissionResolver;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @Override
@@ -56,35 +65,73 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String token = authHeader.substring(7);
-        String username = jwtUtil.extractUsername(token);
+        Claims claims;
+        try {
+            // 簽章、過期一次驗完；同一個 token 驗過就走本機快取
+            claims = jwtUtil.verify(token);
+        } catch (Exception e) {
+            log.warn("JWT filter invalid token uri={} reason={}", uri, e.getClass().getSimpleName());
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String username = claims.getSubject();
         if (username == null) {
             log.warn("JWT filter invalid token uri={} reason=null_username", uri);
             filterChain.doFilter(request, response);
             return;
         }
+        // 已登出 / 被撤銷的 token；沒撤銷的只查本機 filter，不打 Redis
+        if (tokenRevocationService.isRevoked(claims)) {
+            log.warn("JWT filter revoked token uri={} user={}", uri, username);
+            filterChain.doFilter(request, response);
+            return;
+        }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-
-            var userDetails = userDetailsService.loadUserByUsername(username);
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            List<GrantedAuthority> authorities = authorities(claims, username);
+            if (authorities == null) {
+                // token 有效但用戶已經不存在，當作沒登入
+                log.warn("JWT filter user gone uri={} user={}", uri, username);
+                filterChain.doFilter(request, response);
+                return;
+            }
 
-            if (jwtUtil.validateToken(token, userDetails)) {
-                // 驗證通過才寫入 SecurityContext
-                UsernamePasswordAuthenticationToken auth =
-                        new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities()
-                        );
+            // 主體就是用戶名，不再每個請求查一次 DB 拿 UserDetails
+            UsernamePasswordAuthenticationToken auth =
+                    new UsernamePasswordAuthenticationToken(username, null, authorities);
 
-                auth.setDetails(
-                        new WebAuthenticationDetailsSource().buildDetails(request)
-                );
+            auth.setDetails(
+                    new WebAuthenticationDetailsSource().buildDetails(request)
+            );
 
-                SecurityContextHolder.getContext().setAuthentication(auth);
-                log.debug("JWT filter authenticated uri={} user={} perms={}", uri, username, userDetails.getAuthorities());
-            } else {
-                log.warn("JWT filter invalid token uri={} user={}", uri, username);
-            }
+            SecurityContextHolder.getContext().setAuthentication(auth);
+            log.debug("JWT filter authenticated uri={} user={} perms={}", uri, username, authorities);
         }
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * token 簽發後權限版本沒變，角色碼直接用 token 裡的；
+     * 版本變了（有人改過角色 / 權限）就改用版本化的權限快取，沒有才回 DB，用戶不存在回 null。
+     * 被刪掉的用戶在前面的撤銷檢查就擋掉了。
+     */
+    private List<GrantedAuthority> authorities(Claims claims, String username) {
+        if (jwtUtil.permissionVersion(claims) == permissionResolver.currentVersion()) {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for (String role : jwtUtil.roles(claims)) {
+                authorities.add(new SimpleGrantedAuthority("ROLE_" + role.trim().toUpperCase()));
+            }
+            return authorities;
+        }
+        PermissionResolver.Resolved resolved = permissionResolver.resolve(username);
+        if (resolved == null) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (String code : resolved.snapshot().decode(resolved.bits())) {
+            authorities.add(new SimpleGrantedAuthority(code));
+        }
+        return authorities;
+    }
 }
@@ -0,0 +1,17 @@
+-- operation_log 關鍵字查詢用的索引（MySQL 8.0+）
+-- ddl-auto 是 none，請手動在資料庫執行一次；開啟全文路徑前要先建好 ft_operation_log_text
+-- ngram 預設 ngram_token_size=2，中文兩個字以上就能查
+
+-- 時間排序 / 時間區間，所有查詢最後都按 create_time, id 倒序
+CREATE INDEX idx_operation_log_create_time ON operation_log (create_time, id);
+
+-- 精確比對路徑：traceId / IP / 用戶名 / 路徑前綴
+CREATE INDEX idx_operation_log_trace_id ON operation_log (trace_id);
+CREATE INDEX idx_operation_log_ip ON operation_log (ip, create_time);
+CREATE INDEX idx_operation_log_username ON operation_log (username, create_time);
+CREATE INDEX idx_operation_log_uri ON operation_log (uri, create_time);
+
+-- 全文路徑：操作名稱、描述、參數、類名、方法名
+ALTER TABLE operation_log
+    ADD FULLTEXT INDEX ft_operation_log_text (operation, description, args, class_name, method_name)
+    WITH PARSER ngram;
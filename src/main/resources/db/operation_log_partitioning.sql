@@ -0,0 +1,47 @@
+-- operation_log 按月分區（MySQL 8.0+），搭配 OperationLogRetentionJob 做保留期管理
+-- ddl-auto 是 none，請在離峰時段手動執行一次；ALTER 會整表重建，大表先在從庫演練
+--
+-- 注意：
+-- 1. 分區表的主鍵必須包含分區欄位，所以主鍵改成 (id, create_time)；id 還是 Snowflake 全域唯一
+-- 2. InnoDB 分區表不支援 FULLTEXT，有建過 ft_operation_log_text（operation_log_indexes.sql）的話會先拿掉，
+--    並把 app.log.search.fulltext-enabled 關掉（關鍵字退回 LIKE，但只掃查詢區間涵蓋的分區）；沒建過就跳過
+-- 3. 分區名固定 pYYYYMM，保留期任務靠這個名字判斷月份；pmax 接住還沒預建的未來資料
+-- 4. 一開始的分區從執行當月算起建三個月，不用改腳本裡的日期
+-- 5. 第一個分區的下界是開放的，分區前的歷史資料都會落在這裡，跟著它的月份一起過期
+
+-- 全文索引是選配的，先查 information_schema 有沒有，沒有就執行一個什麼都不做的 DO 0，腳本不會中斷
+SET @drop_fulltext = (
+    SELECT IF(COUNT(*) > 0,
+              'ALTER TABLE operation_log DROP INDEX ft_operation_log_text',
+              'DO 0')
+    FROM information_schema.STATISTICS
+    WHERE TABLE_SCHEMA = DATABASE()
+      AND TABLE_NAME = 'operation_log'
+      AND INDEX_NAME = 'ft_operation_log_text'
+);
+PREPARE stmt FROM @drop_fulltext;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+ALTER TABLE operation_log
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, create_time);
+
+-- 分區邊界要是常數，所以用當月一號拼出 DDL 再執行
+SET @month0 = DATE_SUB(CURDATE(), INTERVAL DAYOFMONTH(CURDATE()) - 1 DAY);
+SET @month1 = @month0 + INTERVAL 1 MONTH;
+SET @month2 = @month0 + INTERVAL 2 MONTH;
+SET @month3 = @month0 + INTERVAL 3 MONTH;
+SET @partition_ddl = CONCAT(
+    'ALTER TABLE operation_log PARTITION BY RANGE COLUMNS (create_time) (',
+    'PARTITION p', DATE_FORMAT(@month0, '%Y%m'), ' VALUES LESS THAN (''', DATE_FORMAT(@month1, '%Y-%m-%d 00:00:00'), '''), ',
+    'PARTITION p', DATE_FORMAT(@month1, '%Y%m'), ' VALUES LESS THAN (''', DATE_FORMAT(@month2, '%Y-%m-%d 00:00:00'), '''), ',
+    'PARTITION p', DATE_FORMAT(@month2, '%Y%m'), ' VALUES LESS THAN (''', DATE_FORMAT(@month3, '%Y-%m-%d 00:00:00'), '''), ',
+    'PARTITION pmax VALUES LESS THAN (MAXVALUE))'
+);
+PREPARE stmt FROM @partition_ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 之後每個月的分區由 OperationLogRetentionJob 從 pmax 切出來，過期的整個分區 DROP，不用逐筆 DELETE
+-- 查詢帶了 create_time 區間時 MySQL 會自動做 partition pruning，可以用 EXPLAIN 的 partitions 欄確認
@@ -0,0 +1,151 @@
+package com.jinkops.cache.codec;
+
+import com.jinkops.cache.service.PermissionBits;
+import com.jinkops.entity.user.Permission;
+import com.jinkops.entity.user.Role;
+import com.jinkops.entity.user.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 快取值編碼比較：JSON、Smile、Smile + LZ4 的編碼 / 解碼耗時，main 另外印出各自寫進 Redis 的位元組數。
+ * 值用快取裡實際會放的三種：單一用戶、用戶分頁、權限 bitset。
+ *
+ * 執行方式同 {@link com.jinkops.util.JwtVerifyBenchmark}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    // smile+lz4 的門檻設 1，每個值都試著壓，壓不下來的照原樣存（跟正式環境同一套判斷）
+    @Param({"json", "smile", "smile+lz4"})
+    private String codec;
+
+    @Param({"user", "userPage", "permissionBits"})
+    private String value;
+
+    private CacheSerializer serializer;
+    private Object payload;
+    private Class<?> type;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        serializer = newSerializer(codec);
+        payload = sample(value);
+        type = payload.getClass();
+        encoded = serializer.serialize(payload);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return serializer.serialize(payload);
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return serializer.deserialize(encoded, type);
+    }
+
+    static CacheSerializer newSerializer(String codec) {
+        JsonCacheCodec json = new JsonCacheCodec(Jackson2ObjectMapperBuilder.json().build());
+        SmileCacheCodec smile = new SmileCacheCodec(Jackson2ObjectMapperBuilder.json());
+        CacheSerializer serializer = new CacheSerializer(List.of(json, smile), json, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(serializer, "codecName", codec.startsWith("smile") ? "smile" : "json");
+        ReflectionTestUtils.setField(serializer, "compressThreshold", codec.endsWith("+lz4") ? 1 : 0);
+        serializer.init();
+        return serializer;
+    }
+
+    static Object sample(String value) throws Exception {
+        return switch (value) {
+            case "user" -> user(1);
+            case "userPage" -> userPage(20);
+            case "permissionBits" -> new PermissionBits(0x5DEECE66DL, new long[]{0xFFFF_FFFFL, 0x3FL});
+            default -> throw new IllegalArgumentException(value);
+        };
+    }
+
+    // 跟正式資料差不多的形狀：BCrypt 密碼、一個角色帶二十個權限碼
+    private static User user(long id) {
+        Set<Permission> permissions = new HashSet<>();
+        for (long i = 1; i <= 20; i++) {
+            Permission permission = new Permission();
+            permission.setId(i);
+            permission.setCode("module" + (i % 5) + ":resource" + i + ":read");
+            permissions.add(permission);
+        }
+        Role role = new Role();
+        role.setId(1L);
+        role.setCode("ADMIN");
+        role.setPermissions(permissions);
+
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        user.setEmail("user" + id + "@example.com");
+        user.setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z8Ek6a1G6nQhIYlQm5wYzq2S");
+        user.setRoles(Set.of(role));
+        return user;
+    }
+
+    // UserService 裡的分頁快取值，類別是 private 的，用反射建
+    private static Object userPage(int size) throws Exception {
+        Class<?> pageType = Class.forName("com.jinkops.service.UserService$CachedPage");
+        Constructor<?> constructor = pageType.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Object page = constructor.newInstance();
+        List<User> content = new ArrayList<>();
+        for (long i = 1; i <= size; i++) {
+            content.add(user(i));
+        }
+        ReflectionTestUtils.setField(page, "content", content);
+        ReflectionTestUtils.setField(page, "total", 1000L);
+        return page;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-16s %10s %10s %10s%n", "bytes", "json", "smile", "smile+lz4");
+        for (String value : List.of("user", "userPage", "permissionBits")) {
+            Object sample = sample(value);
+            System.out.printf("%-16s %10d %10d %10d%n", value,
+                    newSerializer("json").serialize(sample).length,
+                    newSerializer("smile").serialize(sample).length,
+                    newSerializer("smile+lz4").serialize(sample).length);
+        }
+        run();
+    }
+
+    private static void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CacheSerializerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
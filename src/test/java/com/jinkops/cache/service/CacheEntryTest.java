@@ -0,0 +1,31 @@
+package com.jinkops.cache.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// XFetch 提前刷新：重建只花幾毫秒的值要靠窗口下限才有機會提前刷新
+class CacheEntryTest {
+
+    @Test
+    void cheapEntryNeverRefreshesEarlyWithoutFloor() {
+        long expireAt = System.currentTimeMillis() + 60_000;
+        for (int i = 0; i < 1_000; i++) {
+            // 1ms * -ln(rand) 最多也就幾十毫秒，離過期還有一分鐘
+            assertThat(CacheEntry.shouldRefreshEarly(1, expireAt, 1.0, 0)).isFalse();
+        }
+    }
+
+    @Test
+    void floorWidensTheWindowForCheapEntries() {
+        long expireAt = System.currentTimeMillis() + 60_000;
+        long floor = 365L * 24 * 3_600_000;
+        assertThat(CacheEntry.shouldRefreshEarly(1, expireAt, 1.0, floor)).isTrue();
+    }
+
+    @Test
+    void entryWithoutMetadataIsNeverRefreshedEarly() {
+        assertThat(CacheEntry.shouldRefreshEarly(0, System.currentTimeMillis() + 1, 1.0, Long.MAX_VALUE)).isFalse();
+        assertThat(new CacheEntry(new byte[0], 5, 0).shouldRefreshEarly(1.0, Long.MAX_VALUE)).isFalse();
+    }
+}
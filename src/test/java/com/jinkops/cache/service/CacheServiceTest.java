@@ -0,0 +1,66 @@
+package com.jinkops.cache.service;
+
+import com.jinkops.cache.codec.CacheSerializer;
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.key.UserKeys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 標籤失效：寫入時登記到標籤 set，失效時把 set 裡的 key 全部 UNLINK
+class CacheServiceTest {
+
+    private StringRedisTemplate redis;
+    private RedisTemplate<String, byte[]> bytesRedis;
+    private CacheService cacheService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        redis = mock(StringRedisTemplate.class);
+        bytesRedis = mock(RedisTemplate.class);
+        CacheSerializer serializer = mock(CacheSerializer.class);
+        when(serializer.serialize(any())).thenReturn("{}".getBytes());
+        cacheService = new CacheService(redis, bytesRedis, serializer, mock(CacheSweeper.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void setObjectRegistersKeyUnderItsTag() throws Exception {
+        cacheService.setObject(UserKeys.userListPage(1, 10), "page", 3600, 5);
+
+        ArgumentCaptor<RedisScript<Long>> script = ArgumentCaptor.forClass(RedisScript.class);
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        verify(bytesRedis).execute(script.capture(), keys.capture(), any(), any(), any());
+        assertThat(keys.getValue()).containsExactly("jinkops:user:list:page:1-10", "jinkops:tag:users");
+        // 值和標籤登記在同一個腳本裡寫
+        assertThat(script.getValue().getScriptAsString())
+                .contains("redis.call('SET', KEYS[1]")
+                .contains("redis.call('SADD', KEYS[i], KEYS[1])");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidateTagUnlinksEveryMemberAndTheTag() {
+        ArgumentCaptor<RedisScript<Long>> script = ArgumentCaptor.forClass(RedisScript.class);
+        when(redis.execute(script.capture(), eq(List.of("jinkops:tag:users")))).thenReturn(3L);
+
+        assertThat(cacheService.invalidateTag(CacheTags.USERS)).isEqualTo(3);
+        assertThat(script.getValue().getScriptAsString())
+                .contains("redis.call('SMEMBERS', KEYS[1])")
+                .contains("redis.call('UNLINK'")
+                .contains("redis.call('DEL', KEYS[1])");
+    }
+}
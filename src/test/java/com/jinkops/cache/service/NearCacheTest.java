@@ -0,0 +1,77 @@
+package com.jinkops.cache.service;
+
+import com.jinkops.cache.codec.CacheSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 熱 key 都由 L1 回應，L1 命中也要用 L2 的過期時間判斷提前刷新
+class NearCacheTest {
+
+    private static final String CACHE = "user";
+    private static final String KEY = "jinkops:user:info:alice";
+
+    private CacheService cacheService;
+    private CacheSerializer serializer;
+    private CacheRefresher cacheRefresher;
+    private NearCache nearCache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cacheService = mock(CacheService.class);
+        serializer = mock(CacheSerializer.class);
+        cacheRefresher = mock(CacheRefresher.class);
+        when(serializer.serialize(any())).thenReturn(new byte[]{1});
+        when(serializer.deserialize(any(), eq(String.class))).thenReturn("alice");
+        nearCache = new NearCache(cacheService, mock(StringRedisTemplate.class), serializer,
+                new SimpleMeterRegistry(), mock(RedisMessageListenerContainer.class), cacheRefresher);
+        ReflectionTestUtils.setField(nearCache, "localMaxSize", 100L);
+        ReflectionTestUtils.setField(nearCache, "localTtlSeconds", 60L);
+    }
+
+    @Test
+    void l1HitChecksRefreshAgainstExpireAtRecordedOnPut() {
+        when(cacheService.setPayload(eq(KEY), any(), eq(3600L), eq(3L))).thenReturn(12_345L);
+        nearCache.put(CACHE, KEY, "alice", 3600, 3);
+
+        Runnable reload = () -> { };
+        NearCache.Lookup<String> lookup = nearCache.get(CACHE, KEY, String.class, reload);
+
+        assertThat(lookup.source()).isEqualTo(NearCache.Lookup.L1);
+        verify(cacheRefresher).refreshIfNeeded(KEY, 3L, 12_345L, reload);
+        verify(cacheService, never()).getEntry(any());
+    }
+
+    @Test
+    void l1HitAfterL2FillKeepsEntryMetadata() throws Exception {
+        CacheEntry entry = new CacheEntry(new byte[]{1}, 4, 99_999L);
+        when(cacheService.getEntry(KEY)).thenReturn(entry);
+        when(cacheService.decode(entry, String.class)).thenReturn("alice");
+        Runnable reload = () -> { };
+
+        assertThat(nearCache.get(CACHE, KEY, String.class, reload).source()).isEqualTo(NearCache.Lookup.L2);
+        assertThat(nearCache.get(CACHE, KEY, String.class, reload).source()).isEqualTo(NearCache.Lookup.L1);
+
+        verify(cacheRefresher).refreshIfNeeded(KEY, entry, reload);
+        verify(cacheRefresher).refreshIfNeeded(KEY, 4L, 99_999L, reload);
+    }
+
+    @Test
+    void lookupWithoutReloadNeverRefreshes() {
+        nearCache.put(CACHE, KEY, "alice", 3600, 3);
+        nearCache.get(CACHE, KEY, String.class);
+        verify(cacheRefresher, never()).refreshIfNeeded(any(), anyLong(), anyLong(), any());
+    }
+}
@@ -0,0 +1,80 @@
+package com.jinkops.cache.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+// 合併載入：leader 失敗時等待的人要馬上拿到同一個錯誤
+class SingleFlightTest {
+
+    private SingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        singleFlight = new SingleFlight(mock(RedissonClient.class));
+        ReflectionTestUtils.setField(singleFlight, "waitMillis", 10_000L);
+    }
+
+    @Test
+    void leaderErrorIsPropagatedToWaitersWithoutTimeout() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> singleFlight.load("k", () -> {
+            loads.incrementAndGet();
+            leaderStarted.countDown();
+            release.await();
+            throw new StackOverflowError("boom");
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> singleFlight.load("k", () -> {
+            loads.incrementAndGet();
+            return "self";
+        }));
+        // 讓 waiter 先掛上 leader 的 future
+        Thread.sleep(200);
+        release.countDown();
+
+        long begin = System.nanoTime();
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        // 沒有等到 wait-ms 才自己查
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)).isLessThan(5_000);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.load("k", () -> {
+            loads.incrementAndGet();
+            release.await();
+            return "v";
+        }));
+        Thread.sleep(100);
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> singleFlight.load("k", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("v");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("v");
+        assertThat(loads).hasValue(1);
+    }
+}
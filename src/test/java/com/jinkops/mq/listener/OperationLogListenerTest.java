@@ -0,0 +1,107 @@
+package com.jinkops.mq.listener;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.jinkops.dto.log.BulkIndexResult;
+import com.jinkops.dto.log.BulkIndexResult.ItemStatus;
+import com.jinkops.dto.log.BulkIndexResult.Outcome;
+import com.jinkops.entity.log.OperationLogEntity;
+import com.jinkops.service.es.OperationLogEsService;
+import com.jinkops.service.es.OperationLogIndexWatermark;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 批次消費的 ACK / NACK：永久失敗要交給 DLX，不能跟成功的一起 ACK 掉
+class OperationLogListenerTest {
+
+    private OperationLogEsService esService;
+    private Jackson2JsonMessageConverter converter;
+    private Channel channel;
+    private OperationLogListener listener;
+
+    @BeforeEach
+    void setUp() {
+        esService = mock(OperationLogEsService.class);
+        converter = mock(Jackson2JsonMessageConverter.class);
+        channel = mock(Channel.class);
+        listener = new OperationLogListener(
+                mock(ElasticsearchClient.class),
+                esService,
+                mock(OperationLogIndexWatermark.class),
+                converter,
+                mock(RabbitListenerEndpointRegistry.class));
+    }
+
+    @Test
+    void rejectedItemsAreNackedWithoutRequeue() throws Exception {
+        List<Message> messages = List.of(message(1), message(2), message(3));
+        when(esService.bulkIndex(any())).thenReturn(result(Outcome.INDEXED, Outcome.REJECTED, Outcome.INDEXED));
+
+        listener.onMessages(messages, channel);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicNack(2L, false, false);
+        order.verify(channel).basicAck(3L, true);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), eq(true));
+    }
+
+    @Test
+    void retryableItemsAreRequeued() throws Exception {
+        List<Message> messages = List.of(message(1), message(2));
+        when(esService.bulkIndex(any())).thenReturn(result(Outcome.RETRYABLE, Outcome.INDEXED));
+
+        listener.onMessages(messages, channel);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicNack(1L, false, true);
+        order.verify(channel).basicAck(2L, true);
+    }
+
+    @Test
+    void allRejectedSendsNoAck() throws Exception {
+        List<Message> messages = List.of(message(1), message(2));
+        when(esService.bulkIndex(any())).thenReturn(result(Outcome.REJECTED, Outcome.REJECTED));
+
+        listener.onMessages(messages, channel);
+
+        verify(channel).basicNack(1L, false, false);
+        verify(channel).basicNack(2L, false, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    private Message message(long tag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        Message message = new Message(new byte[0], properties);
+        OperationLogEntity entity = new OperationLogEntity();
+        entity.setId(tag);
+        when(converter.fromMessage(message)).thenReturn(entity);
+        return message;
+    }
+
+    private static BulkIndexResult result(Outcome... outcomes) {
+        ItemStatus[] items = new ItemStatus[outcomes.length];
+        for (int i = 0; i < outcomes.length; i++) {
+            items[i] = new ItemStatus(i, String.valueOf(i + 1), outcomes[i] == Outcome.INDEXED ? 201 : 400,
+                    outcomes[i], outcomes[i] == Outcome.INDEXED ? null : "failed", 1);
+        }
+        return new BulkIndexResult(List.of(items));
+    }
+}
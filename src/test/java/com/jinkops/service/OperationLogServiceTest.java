@@ -0,0 +1,198 @@
+package com.jinkops.service;
+
+import com.jinkops.entity.log.OperationLogEntity;
+import com.jinkops.enums.LogSearchRoute;
+import com.jinkops.mq.producer.EventLogService;
+import com.jinkops.repository.OperationLogRepository;
+import com.jinkops.service.es.OperationLogEsService;
+import com.jinkops.service.es.OperationLogIndexWatermark;
+import com.jinkops.vo.LogPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 關鍵字查詢路徑選擇
+class OperationLogServiceTest {
+
+    private OperationLogRepository repository;
+    private OperationLogEsService esService;
+    private OperationLogIndexWatermark watermark;
+    private OperationLogService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(OperationLogRepository.class);
+        esService = mock(OperationLogEsService.class);
+        watermark = mock(OperationLogIndexWatermark.class);
+        service = new OperationLogService(
+                repository,
+                esService,
+                watermark,
+                mock(EventLogService.class),
+                mock(Executor.class));
+        ReflectionTestUtils.setField(service, "fallbackCountCap", 10000);
+        ReflectionTestUtils.setField(service, "fullTextEnabled", true);
+    }
+
+    @Test
+    void blankKeywordHasNoRoute() {
+        assertThat(service.planKeyword(null).route()).isEqualTo(LogSearchRoute.NONE);
+        assertThat(service.planKeyword("   ").route()).isEqualTo(LogSearchRoute.NONE);
+    }
+
+    @Test
+    void userPrefixRoutesToUsername() {
+        OperationLogService.LogSearchPlan plan = service.planKeyword("User: admin");
+        assertThat(plan.route()).isEqualTo(LogSearchRoute.USERNAME);
+        assertThat(plan.value()).isEqualTo("admin");
+    }
+
+    @Test
+    void traceIdIsLowerCased() {
+        OperationLogService.LogSearchPlan plan = service.planKeyword("0123456789ABCDEF0123456789ABCDEF");
+        assertThat(plan.route()).isEqualTo(LogSearchRoute.TRACE_ID);
+        assertThat(plan.value()).isEqualTo("0123456789abcdef0123456789abcdef");
+    }
+
+    @Test
+    void ipLiteralsRouteToIp() {
+        assertThat(service.planKeyword("192.168.0.1").route()).isEqualTo(LogSearchRoute.IP);
+        assertThat(service.planKeyword("fe80::1").route()).isEqualTo(LogSearchRoute.IP);
+        // 超出範圍的不是 IP
+        assertThat(service.planKeyword("999.1.1.1").route()).isNotEqualTo(LogSearchRoute.IP);
+    }
+
+    @Test
+    void ipv6NeedsEightGroupsOrOneDoubleColon() {
+        assertThat(OperationLogService.isIpv6("2001:db8:0:0:0:0:2:1")).isTrue();
+        assertThat(OperationLogService.isIpv6("2001:db8::2:1")).isTrue();
+        assertThat(OperationLogService.isIpv6("::1")).isTrue();
+        assertThat(OperationLogService.isIpv6("fe80::")).isTrue();
+        // 時間、太短、空的都不是
+        assertThat(OperationLogService.isIpv6("12:30:45")).isFalse();
+        assertThat(OperationLogService.isIpv6("1:2")).isFalse();
+        assertThat(OperationLogService.isIpv6("::")).isFalse();
+        assertThat(OperationLogService.isIpv6("1::2::3")).isFalse();
+        assertThat(OperationLogService.isIpv6("1:::2")).isFalse();
+        assertThat(OperationLogService.isIpv6("1:2:3:4:5:6:7::8")).isFalse();
+        assertThat(service.planKeyword("12:30:45").route()).isEqualTo(LogSearchRoute.FULLTEXT);
+    }
+
+    @Test
+    void leadingSlashRoutesToUriPrefix() {
+        OperationLogService.LogSearchPlan plan = service.planKeyword("/api/users");
+        assertThat(plan.route()).isEqualTo(LogSearchRoute.URI_PREFIX);
+        assertThat(plan.value()).isEqualTo("/api/users");
+    }
+
+    @Test
+    void plainTextRoutesToFullTextWithRawValue() {
+        OperationLogService.LogSearchPlan plan = service.planKeyword(" admin ");
+        assertThat(plan.route()).isEqualTo(LogSearchRoute.FULLTEXT);
+        assertThat(plan.value()).isEqualTo("admin");
+    }
+
+    @Test
+    void shortOrQuoteOnlyTextFallsBackToLike() {
+        assertThat(service.planKeyword("a").route()).isEqualTo(LogSearchRoute.LIKE);
+        assertThat(service.planKeyword("\"x\"").route()).isEqualTo(LogSearchRoute.LIKE);
+    }
+
+    @Test
+    void fullTextDisabledFallsBackToLike() {
+        ReflectionTestUtils.setField(service, "fullTextEnabled", false);
+        assertThat(service.planKeyword("admin").route()).isEqualTo(LogSearchRoute.LIKE);
+    }
+
+    @Test
+    void fullTextRouteQueriesPhraseAndCapsCount() {
+        when(repository.searchFullText(any(), any(), any(), any())).thenReturn(List.of());
+        when(repository.countFullText(any(), any(), any(), anyInt())).thenReturn(10000L);
+
+        Page<?> page = service.searchLogs("login \"ok\"", PageRequest.of(0, 20));
+
+        // 雙引號拿掉後包成片語
+        verify(repository).searchFullText(eq("\"login  ok\""), isNull(), isNull(), any());
+        verify(repository).countFullText(eq("\"login  ok\""), isNull(), isNull(), eq(10000));
+        // 全文路徑不碰十欄位 LIKE
+        verify(repository, never()).searchForEsFallback(any(), any(), any(), any());
+        assertThat(page.getTotalElements()).isEqualTo(10000L);
+        // 數到上限，總數只是下限
+        assertThat(LogPage.isExact(page)).isFalse();
+    }
+
+    @Test
+    void likeRouteReportsExactTotalBelowCap() {
+        ReflectionTestUtils.setField(service, "fullTextEnabled", false);
+        when(repository.searchForEsFallback(any(), any(), any(), any())).thenReturn(List.of());
+        when(repository.countForEsFallback(any(), any(), any(), anyInt())).thenReturn(42L);
+
+        Page<?> page = service.searchLogs("admin", PageRequest.of(0, 20));
+
+        assertThat(page.getTotalElements()).isEqualTo(42L);
+        assertThat(LogPage.isExact(page)).isTrue();
+    }
+
+    @Test
+    void cappedTailWithFullPageSkipsEsOffsetMath() throws Exception {
+        ReflectionTestUtils.setField(service, "fallbackCountCap", 100);
+        ReflectionTestUtils.setField(service, "fullTextEnabled", false);
+        when(watermark.current()).thenReturn(1_000L);
+        when(repository.searchForEsFallback(any(), any(), any(), any())).thenReturn(rows(20));
+        when(repository.countForEsFallback(any(), any(), any(), anyInt())).thenReturn(100L);
+
+        Page<?> page = service.searchEs("admin", null, null, 10, 20);
+
+        // 尾巴確切筆數不知道，不能拿上限去扣 ES 的起點
+        verify(esService, never()).searchSlice(any(), any(), any(), anyInt(), anyInt());
+        assertThat(page.getContent()).hasSize(20);
+        assertThat(LogPage.isExact(page)).isFalse();
+    }
+
+    @Test
+    void cappedTailEndingOnThisPageStartsEsAtTheRealTailEnd() throws Exception {
+        ReflectionTestUtils.setField(service, "fallbackCountCap", 100);
+        ReflectionTestUtils.setField(service, "fullTextEnabled", false);
+        when(watermark.current()).thenReturn(1_000L);
+        when(repository.searchForEsFallback(any(), any(), any(), any())).thenReturn(rows(5));
+        when(repository.countForEsFallback(any(), any(), any(), anyInt())).thenReturn(100L);
+        when(esService.searchSlice(any(), any(), any(), anyInt(), anyInt()))
+                .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 1), 50));
+
+        Page<?> page = service.searchEs("admin", null, null, 10, 20);
+
+        // 第 10 頁撈到 5 筆，尾巴一共 205 筆，這頁剩下的 15 筆從 ES 第 0 筆接
+        verify(esService).searchSlice(eq("admin"), isNull(), eq(1_000L), eq(0), eq(15));
+        assertThat(page.getTotalElements()).isEqualTo(255L);
+        assertThat(LogPage.isExact(page)).isTrue();
+    }
+
+    private static List<OperationLogEntity> rows(int count) {
+        List<OperationLogEntity> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            OperationLogEntity row = new OperationLogEntity();
+            row.setId((long) (count - i));
+            row.setCreateTime(LocalDateTime.now().minusSeconds(i));
+            rows.add(row);
+        }
+        return rows;
+    }
+}
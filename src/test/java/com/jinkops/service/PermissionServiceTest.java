@@ -0,0 +1,39 @@
+package com.jinkops.service;
+
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.service.CacheService;
+import com.jinkops.cache.service.PermissionCache;
+import com.jinkops.entity.user.Permission;
+import com.jinkops.repository.PermissionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 權限刪除後，用戶分頁快取（帶著權限）要整批失效
+class PermissionServiceTest {
+
+    private PermissionRepository permissionRepository;
+    private CacheService cacheService;
+    private PermissionService service;
+
+    @BeforeEach
+    void setUp() {
+        permissionRepository = mock(PermissionRepository.class);
+        cacheService = mock(CacheService.class);
+        service = new PermissionService(permissionRepository, mock(PermissionCache.class), cacheService);
+    }
+
+    @Test
+    void deleteInvalidatesUserPages() {
+        when(permissionRepository.findById(1L)).thenReturn(Optional.of(new Permission()));
+
+        service.delete(1L);
+
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+}
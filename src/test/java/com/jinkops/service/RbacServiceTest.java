@@ -0,0 +1,67 @@
+package com.jinkops.service;
+
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.service.CacheService;
+import com.jinkops.cache.service.NearCache;
+import com.jinkops.cache.service.PermissionCache;
+import com.jinkops.entity.user.Permission;
+import com.jinkops.entity.user.Role;
+import com.jinkops.entity.user.User;
+import com.jinkops.repository.PermissionRepository;
+import com.jinkops.repository.RoleRepository;
+import com.jinkops.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 角色 / 權限綁定後，用戶分頁快取要整批失效
+class RbacServiceTest {
+
+    private UserRepository userRepository;
+    private RoleRepository roleRepository;
+    private PermissionRepository permissionRepository;
+    private CacheService cacheService;
+    private PermissionCache permissionCache;
+    private RbacService service;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        roleRepository = mock(RoleRepository.class);
+        permissionRepository = mock(PermissionRepository.class);
+        cacheService = mock(CacheService.class);
+        permissionCache = mock(PermissionCache.class);
+        service = new RbacService(userRepository, roleRepository, permissionRepository,
+                permissionCache, cacheService, mock(NearCache.class));
+    }
+
+    @Test
+    void assignUserRolesInvalidatesUserPages() {
+        User user = UserServiceTest.user("alice", "enc:x");
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(roleRepository.findAllById(Set.of(2L))).thenReturn(List.of(new Role()));
+
+        service.assignUserRoles(1L, Set.of(2L));
+
+        verify(permissionCache).delete("alice");
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+
+    @Test
+    void assignRolePermissionsInvalidatesUserPages() {
+        when(roleRepository.findById(2L)).thenReturn(Optional.of(new Role()));
+        when(permissionRepository.findAllById(Set.of(3L))).thenReturn(List.of(new Permission()));
+
+        service.assignRolePermissions(2L, Set.of(3L));
+
+        verify(permissionCache).deleteAll();
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+}
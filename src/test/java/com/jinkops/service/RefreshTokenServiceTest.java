@@ -0,0 +1,60 @@
+package com.jinkops.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// refresh token：family 跟用戶索引一次寫好，改密碼 / 刪用戶整批作廢
+class RefreshTokenServiceTest {
+
+    private StringRedisTemplate redis;
+    private RefreshTokenService service;
+
+    @BeforeEach
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        service = new RefreshTokenService(redis);
+        ReflectionTestUtils.setField(service, "idleTtlHours", 168L);
+        ReflectionTestUtils.setField(service, "maxLifetimeHours", 720L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issueWritesFamilyTtlAndUserIndexInOneScript() {
+        String token = service.issue("admin", List.of("ADMIN"), 3);
+
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redis).execute(any(RedisScript.class), keys.capture(), args.capture());
+        String familyId = token.substring(0, token.indexOf('.'));
+        assertThat(keys.getValue()).containsExactly(
+                "jinkops:auth:refresh:" + familyId, "jinkops:auth:refresh-user:admin");
+        assertThat(args.getValue()).contains(familyId, "admin", "ADMIN", "3");
+        // 不再分開 HSET / EXPIRE
+        verify(redis, never()).opsForHash();
+        verify(redis, never()).expire(any(), anyLong(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokeUserDeletesEveryFamilyOfThatUser() {
+        when(redis.execute(any(RedisScript.class), eq(List.of("jinkops:auth:refresh-user:admin")),
+                eq("jinkops:auth:refresh:"))).thenReturn(2L);
+
+        assertThat(service.revokeUser("admin")).isEqualTo(2);
+    }
+}
@@ -0,0 +1,50 @@
+package com.jinkops.service;
+
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.service.CacheService;
+import com.jinkops.cache.service.PermissionCache;
+import com.jinkops.entity.user.Role;
+import com.jinkops.repository.RoleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 角色異動後，用戶分頁快取（帶著角色）要整批失效
+class RoleServiceTest {
+
+    private RoleRepository roleRepository;
+    private CacheService cacheService;
+    private RoleService service;
+
+    @BeforeEach
+    void setUp() {
+        roleRepository = mock(RoleRepository.class);
+        cacheService = mock(CacheService.class);
+        service = new RoleService(roleRepository, mock(PermissionCache.class), cacheService);
+        when(roleRepository.save(any(Role.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void updateInvalidatesUserPages() {
+        when(roleRepository.findById(1L)).thenReturn(Optional.of(new Role()));
+
+        service.update(1L, "AUDITOR");
+
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+
+    @Test
+    void deleteInvalidatesUserPages() {
+        when(roleRepository.findById(1L)).thenReturn(Optional.of(new Role()));
+
+        service.delete(1L);
+
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+}
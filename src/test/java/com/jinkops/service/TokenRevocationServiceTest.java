@@ -0,0 +1,62 @@
+package com.jinkops.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 刪除用戶：只擋這個用戶在刪除前簽發的 token
+class TokenRevocationServiceTest {
+
+    private StringRedisTemplate redis;
+    private TokenRevocationService service;
+
+    @BeforeEach
+    void setUp() {
+        redis = mock(StringRedisTemplate.class, RETURNS_DEEP_STUBS);
+        service = new TokenRevocationService(redis, mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(service, "expectedSize", 1000L);
+        ReflectionTestUtils.setField(service, "falsePositiveRate", 0.001);
+        ReflectionTestUtils.setField(service, "tokenTtlMillis", 3_600_000L);
+        service.init();
+    }
+
+    @Test
+    void tokensIssuedBeforeUserRevocationAreRevoked() {
+        long before = System.currentTimeMillis() - 60_000;
+        service.revokeUser("alice");
+        when(redis.opsForValue().get("jinkops:jwt:revoked:user:alice"))
+                .thenReturn(String.valueOf(System.currentTimeMillis()));
+
+        assertThat(service.isRevoked(claims("alice", before))).isTrue();
+        // 同名重建後重新登入拿到的 token 不受影響
+        assertThat(service.isRevoked(claims("alice", System.currentTimeMillis() + 60_000))).isFalse();
+    }
+
+    @Test
+    void otherUsersSkipRedis() {
+        service.revokeUser("alice");
+
+        assertThat(service.isRevoked(claims("bob", System.currentTimeMillis()))).isFalse();
+        verify(redis.opsForValue(), never()).get("jinkops:jwt:revoked:user:bob");
+    }
+
+    private static Claims claims(String username, long issuedAt) {
+        Claims claims = Jwts.claims();
+        claims.setSubject(username);
+        claims.setIssuedAt(new Date(issuedAt));
+        return claims;
+    }
+}
@@ -0,0 +1,132 @@
+package com.jinkops.service;
+
+import com.jinkops.cache.key.CacheTags;
+import com.jinkops.cache.service.CacheRefresher;
+import com.jinkops.cache.service.CacheService;
+import com.jinkops.cache.service.NearCache;
+import com.jinkops.cache.service.PermissionCache;
+import com.jinkops.cache.service.SingleFlight;
+import com.jinkops.entity.user.User;
+import com.jinkops.repository.RoleRepository;
+import com.jinkops.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 用戶寫入後的快取失效與登入態撤銷
+class UserServiceTest {
+
+    private UserRepository userRepository;
+    private CacheService cacheService;
+    private PasswordEncoder passwordEncoder;
+    private RefreshTokenService refreshTokenService;
+    private TokenRevocationService tokenRevocationService;
+    private PermissionCache permissionCache;
+    private UserService service;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        cacheService = mock(CacheService.class);
+        passwordEncoder = mock(PasswordEncoder.class);
+        refreshTokenService = mock(RefreshTokenService.class);
+        tokenRevocationService = mock(TokenRevocationService.class);
+        permissionCache = mock(PermissionCache.class);
+        service = new UserService(
+                userRepository,
+                cacheService,
+                mock(NearCache.class),
+                mock(SingleFlight.class),
+                mock(CacheRefresher.class),
+                passwordEncoder,
+                mock(RedissonClient.class),
+                permissionCache,
+                mock(PermissionRegistry.class),
+                mock(RoleRepository.class),
+                refreshTokenService,
+                tokenRevocationService);
+        when(passwordEncoder.encode(anyString())).thenAnswer(inv -> "enc:" + inv.getArgument(0));
+        when(userRepository.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void passwordChangeRevokesRefreshFamilies() {
+        when(userRepository.findByUsername("alice")).thenReturn(user("alice", "enc:old"));
+        when(passwordEncoder.matches("new", "enc:old")).thenReturn(false);
+
+        service.updateUser(user("alice", "new"));
+
+        verify(refreshTokenService).revokeUser("alice");
+    }
+
+    @Test
+    void emailOnlyUpdateKeepsSessions() {
+        when(userRepository.findByUsername("alice")).thenReturn(user("alice", "enc:same"));
+        when(passwordEncoder.matches("same", "enc:same")).thenReturn(true);
+
+        service.updateUser(user("alice", "same"));
+
+        verify(refreshTokenService, never()).revokeUser(any());
+    }
+
+    @Test
+    void deleteUserRevokesRefreshFamilies() {
+        when(userRepository.findByUsername("alice")).thenReturn(user("alice", "enc:x"));
+
+        service.deleteUser("alice");
+
+        verify(refreshTokenService).revokeUser("alice");
+    }
+
+    @Test
+    void deleteUserRevokesOnlyThatUsersTokens() {
+        when(userRepository.findByUsername("alice")).thenReturn(user("alice", "enc:x"));
+
+        service.deleteUser("alice");
+
+        verify(tokenRevocationService).revokeUser("alice");
+        verify(permissionCache).delete("alice");
+        // 全域權限版本留給角色 / 權限定義變更
+        verify(permissionCache, never()).deleteAll();
+    }
+
+    @Test
+    void addUserInvalidatesUserPages() {
+        service.addUser(user("carol", "pw"));
+
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+
+    @Test
+    void updateUserInvalidatesUserPages() {
+        when(userRepository.findByUsername("alice")).thenReturn(user("alice", "enc:old"));
+
+        service.updateUser(user("alice", "new"));
+
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+
+    @Test
+    void deleteUserInvalidatesUserPages() {
+        when(userRepository.findByUsername("alice")).thenReturn(user("alice", "enc:x"));
+
+        service.deleteUser("alice");
+
+        verify(cacheService).invalidateTag(CacheTags.USERS);
+    }
+
+    static User user(String username, String password) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(password);
+        return user;
+    }
+}
@@ -0,0 +1,61 @@
+package com.jinkops.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 快取失效要等交易提交才做
+class AfterCommitTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void runsImmediatelyWithoutTransaction() {
+        AtomicInteger calls = new AtomicInteger();
+        AfterCommit.run(calls::incrementAndGet);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void waitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        AtomicInteger calls = new AtomicInteger();
+
+        AfterCommit.run(calls::incrementAndGet);
+        assertThat(calls).hasValue(0);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void skippedOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        AtomicInteger calls = new AtomicInteger();
+
+        AfterCommit.run(calls::incrementAndGet);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void failureAfterCommitDoesNotPropagate() {
+        TransactionSynchronizationManager.initSynchronization();
+        AfterCommit.run(() -> {
+            throw new IllegalStateException("redis down");
+        });
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    }
+}
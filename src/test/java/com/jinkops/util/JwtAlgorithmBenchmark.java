@@ -0,0 +1,65 @@
+package com.jinkops.util;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各簽章演算法單次簽發、完整驗證（不走快取）的耗時，換 ES256 前先看驗證多花多少。
+ *
+ * 執行方式同 {@link JwtVerifyBenchmark}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAlgorithmBenchmark {
+
+    @Param({"HS256", "ES256"})
+    private String algorithm;
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 快取關掉，每次都是完整的簽章驗證
+        jwtUtil = new JwtUtil(JwtVerifyBenchmark.newKeyRing(algorithm), 3_600_000L, 0L, new SimpleMeterRegistry());
+        token = jwtUtil.generateToken("admin", List.of("ADMIN"), 1);
+    }
+
+    @Benchmark
+    public String sign() {
+        return jwtUtil.generateToken("admin", List.of("ADMIN"), 1);
+    }
+
+    @Benchmark
+    public Claims verify() {
+        return jwtUtil.parseToken(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtAlgorithmBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
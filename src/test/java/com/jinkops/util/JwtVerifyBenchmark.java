@@ -0,0 +1,111 @@
+package com.jinkops.util;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 過濾器驗 token 的新舊路徑比較（HS256）：
+ * 舊的每次呼叫都重建解析器再完整驗一次；新的共用解析器，同一個 token 驗過就走 Caffeine。
+ *
+ * 執行：mvn -B test-compile 後
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; com.jinkops.util.JwtVerifyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JwtVerifyBenchmark {
+
+    // 模擬同時在線的用戶數
+    private static final int TOKENS = 1000;
+
+    private Key key;
+    private JwtUtil jwtUtil;
+    private String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JwtKeyRing keyRing = newKeyRing("HS256");
+        key = keyRing.current().key();
+        jwtUtil = new JwtUtil(keyRing, 3_600_000L, 10_000L, new SimpleMeterRegistry());
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            tokens[i] = jwtUtil.generateToken("user" + i, List.of("ADMIN"), 1);
+            // 先驗一輪把快取填滿，量的是熱用戶的後續請求
+            jwtUtil.verify(tokens[i]);
+        }
+    }
+
+    // 舊路徑：每次建新解析器再驗簽章 / base64 / JSON
+    @Benchmark
+    public Claims perCallParser() {
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(nextToken())
+                .getBody();
+    }
+
+    // 共用解析器，但不走快取
+    @Benchmark
+    public Claims sharedParser() {
+        return jwtUtil.parseToken(nextToken());
+    }
+
+    // 新路徑：摘要查快取命中
+    @Benchmark
+    public Claims cachedVerify() {
+        return jwtUtil.verify(nextToken());
+    }
+
+    // 每次隨機挑一個用戶，執行緒之間不共用游標
+    private String nextToken() {
+        return tokens[ThreadLocalRandom.current().nextInt(TOKENS)];
+    }
+
+    // Redis 只在 ES256 發佈公鑰時用到，這裡 mock 掉
+    static JwtKeyRing newKeyRing(String algorithm) {
+        JwtKeyRing keyRing = new JwtKeyRing(mock(StringRedisTemplate.class, RETURNS_DEEP_STUBS),
+                algorithm, "benchmark-secret-benchmark-secret-0123", 3_600_000L);
+        ReflectionTestUtils.setField(keyRing, "rotationHours", 24L);
+        ReflectionTestUtils.setField(keyRing, "overlapMinutes", 10L);
+        ReflectionTestUtils.setField(keyRing, "acceptLegacy", true);
+        keyRing.init();
+        return keyRing;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerifyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}